@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import main.CrudAppApplication;
+
+//Boots the real application against an in-memory H2 database, for benchmarks that go through the Spring beans
+final class BenchmarkApp {
+
+	private BenchmarkApp() {
+	}
+
+	static ConfigurableApplicationContext start(String... extraProperties) {
+		return new SpringApplicationBuilder(CrudAppApplication.class)
+				.properties(
+						"spring.datasource.url=jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+						"spring.datasource.username=sa",
+						"spring.jpa.hibernate.ddl-auto=create-drop",
+						"spring.jpa.open-in-view=false",
+						"spring.sql.init.mode=always",
+						"spring.main.banner-mode=off",
+						"logging.level.root=warn",
+						"server.port=0",
+						"spring.security.oauth2.client.registration.google.client-id=bench",
+						"spring.security.oauth2.client.registration.google.client-secret=bench",
+						"jwt.secretKey=" + JwtFilterBenchmark.SECRET,
+						"jwt.expirationOffset=900000",
+						"jwt.refreshOffset=604800000",
+						"books.stream.fetchSize=500")
+				.properties(extraProperties)
+				.run();
+	}
+
+}
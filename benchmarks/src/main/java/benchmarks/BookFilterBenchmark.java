@@ -0,0 +1,94 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import models.BookSummaryDTO;
+import models.Books;
+import repository.BookRepository;
+import repository.BookSort;
+
+//GET /books/filter queries against an H2 catalog of catalogSize books (500 authors, prices from 5 to 95),
+//with the secondary indexes from Books and with those indexes dropped
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class BookFilterBenchmark {
+
+	@Param({"1000000"})
+	public int catalogSize;
+
+	@Param({"true", "false"})
+	public boolean indexed;
+
+	private ConfigurableApplicationContext context;
+	private BookRepository bookrepo;
+
+	@Setup
+	public void setup() {
+		context = BenchmarkApp.start();
+		bookrepo = context.getBean(BookRepository.class);
+		List<Books> books = new ArrayList<>(10_000);
+		for (int i = 0; i < catalogSize; i++) {
+			books.add(BooksSerializationBenchmark.newBook(i));
+			if (books.size() == 10_000) {
+				bookrepo.upsertAll(books, 1000);
+				books.clear();
+			}
+		}
+		bookrepo.upsertAll(books, 1000);
+
+		if (!indexed) {
+			JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+			jdbcTemplate.execute("drop index idx_books_author_price");
+			jdbcTemplate.execute("drop index idx_books_author_title");
+			jdbcTemplate.execute("drop index idx_books_price");
+		}
+	}
+
+	@TearDown
+	public void stop() {
+		context.close();
+	}
+
+	private static String randomAuthor() {
+		return "Author " + ThreadLocalRandom.current().nextInt(500);
+	}
+
+	@Benchmark
+	public List<BookSummaryDTO> authorAndPriceRange() {
+		return bookrepo.findSummaries(randomAuthor(), 20.0, 40.0, BookSort.PRICE, 50, 0);
+	}
+
+	@Benchmark
+	public List<BookSummaryDTO> authorByTitle() {
+		return bookrepo.findSummaries(randomAuthor(), null, null, BookSort.TITLE_DESC, 50, 0);
+	}
+
+	@Benchmark
+	public List<BookSummaryDTO> narrowPriceRange() {
+		double min = 5 + ThreadLocalRandom.current().nextInt(9000) / 100.0;
+		return bookrepo.findSummaries(null, min, min + 0.05, BookSort.PRICE_DESC, 50, 0);
+	}
+
+}
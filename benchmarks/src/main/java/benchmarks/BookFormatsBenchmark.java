@@ -0,0 +1,117 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import models.Books;
+import models.BooksPageDTO;
+
+//Encoding cost and payload size of the representations GET /books/{isbn} and GET /books?limit=50 negotiate, with
+//mappers built like the ones of BookFormats. The page is read back as a tree, BooksPageDTO is response-only.
+//The payload sizes are printed once per fork.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookFormatsBenchmark {
+
+	private static final int PAGE_SIZE = 50;
+
+	@Param({"json", "cbor", "smile", "protobuf"})
+	public String format;
+
+	private Books book;
+	private BooksPageDTO page;
+	private ObjectWriter bookWriter;
+	private ObjectWriter pageWriter;
+	private ObjectReader bookReader;
+	private ObjectReader pageReader;
+	private byte[] bookBytes;
+	private byte[] pageBytes;
+
+	@Setup
+	public void setup() throws IOException {
+		List<Books> books = new ArrayList<>(PAGE_SIZE);
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			Books pageBook = BooksSerializationBenchmark.newBook(i);
+			pageBook.setVersion(3L);
+			pageBook.setUpdatedAt(1_700_000_000_000L + i);
+			books.add(pageBook);
+		}
+		book = books.getFirst();
+		page = new BooksPageDTO(books, books.getLast().getIsbn());
+
+		Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+		ObjectMapper mapper = switch (format) {
+			case "json" -> builder.build();
+			case "cbor" -> builder.factory(new CBORFactory()).build();
+			case "smile" -> builder.factory(new SmileFactory()).build();
+			case "protobuf" -> builder.factory(new ProtobufFactory()).build();
+			default -> throw new IllegalArgumentException(format);
+		};
+		bookWriter = mapper.writer();
+		pageWriter = mapper.writer();
+		bookReader = mapper.readerFor(Books.class);
+		pageReader = mapper.readerFor(JsonNode.class);
+		if (format.equals("protobuf")) {
+			NativeProtobufSchema schema = ProtobufSchemaLoader.std.loadNative(new ClassPathResource("books.proto").getURL());
+			bookWriter = bookWriter.with(schema.forType("Book"));
+			pageWriter = pageWriter.with(schema.forType("BookPage"));
+			bookReader = bookReader.with(schema.forType("Book"));
+			pageReader = pageReader.with(schema.forType("BookPage"));
+		}
+
+		bookBytes = bookWriter.writeValueAsBytes(book);
+		pageBytes = pageWriter.writeValueAsBytes(page);
+		System.out.printf("%n%s: book %d bytes, page of %d %d bytes%n", format, bookBytes.length, PAGE_SIZE, pageBytes.length);
+	}
+
+	@Benchmark
+	public byte[] serializeBook() throws IOException {
+		return bookWriter.writeValueAsBytes(book);
+	}
+
+	@Benchmark
+	public byte[] serializePage() throws IOException {
+		return pageWriter.writeValueAsBytes(page);
+	}
+
+	@Benchmark
+	public Books deserializeBook() throws IOException {
+		return bookReader.readValue(bookBytes);
+	}
+
+	@Benchmark
+	public JsonNode deserializePage() throws IOException {
+		return pageReader.readValue(pageBytes);
+	}
+
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import models.BookImportReportDTO;
+import models.Books;
+import repository.BookRepository;
+import service.BookImportService;
+
+//Rows per second written by POST /books/batch versus the one-save-per-request path of POST /books.
+//Scores are per row thanks to @OperationsPerInvocation.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookImportBenchmark {
+
+	static final int ROWS = 1000;
+
+	private ConfigurableApplicationContext context;
+	private BookRepository bookrepo;
+	private BookImportService importService;
+	private long run;
+
+	@Setup
+	public void setup() {
+		context = BenchmarkApp.start();
+		bookrepo = context.getBean(BookRepository.class);
+		importService = context.getBean(BookImportService.class);
+	}
+
+	@TearDown(Level.Iteration)
+	public void clearTable() {
+		bookrepo.deleteAllInBatch();
+	}
+
+	@TearDown
+	public void stop() {
+		context.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void singleSaves() {
+		long prefix = run++;
+		for (int i = 0; i < ROWS; i++) {
+			Books book = new Books();
+			book.setIsbn(prefix + "-" + i);
+			book.setAuthor("Bench Author");
+			book.setTitle("Bench Title " + i);
+			book.setPrice(9.99);
+			bookrepo.save(book);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public BookImportReportDTO batchImport() throws IOException {
+		long prefix = run++;
+		StringBuilder body = new StringBuilder(ROWS * 80);
+		for (int i = 0; i < ROWS; i++) {
+			body.append("{\"isbn\":\"").append(prefix).append('-').append(i)
+				.append("\",\"author\":\"Bench Author\",\"title\":\"Bench Title ").append(i).append("\",\"price\":9.99}\n");
+		}
+		return importService.importNdjson(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+}
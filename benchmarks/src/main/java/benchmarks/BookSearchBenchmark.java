@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import models.Books;
+import repository.BookRepository;
+import service.BookSearchIndex;
+
+//Query latency of the in-memory search index for GET /books/search, built from an H2 catalog of catalogSize books
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookSearchBenchmark {
+
+	@Param({"10000", "100000"})
+	public int catalogSize;
+
+	private ConfigurableApplicationContext context;
+	private BookSearchIndex index;
+
+	@Setup
+	public void setup() {
+		context = BenchmarkApp.start();
+		BookRepository bookrepo = context.getBean(BookRepository.class);
+		List<Books> books = new ArrayList<>(catalogSize);
+		for (int i = 0; i < catalogSize; i++) {
+			books.add(BooksSerializationBenchmark.newBook(i));
+		}
+		bookrepo.upsertAll(books, 1000);
+
+		index = new BookSearchIndex(bookrepo, 3, 1000);
+		index.afterSingletonsInstantiated();
+	}
+
+	@TearDown
+	public void stop() {
+		context.close();
+	}
+
+	//one exact term that only a single book has
+	@Benchmark
+	public List<Books> selectiveTerm() {
+		return index.search("4242", 20);
+	}
+
+	//a prefix every book has and a number too short to be a prefix, which matches a few hundred books as a whole word
+	@Benchmark
+	public List<Books> twoPrefixes() {
+		return index.search("author 42", 20);
+	}
+
+	//a prefix shared by every book, the worst case, capped at maxCandidates
+	@Benchmark
+	public List<Books> broadPrefix() {
+		return index.search("reas", 20);
+	}
+
+}
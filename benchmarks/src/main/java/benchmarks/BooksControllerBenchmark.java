@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BeanPropertyBindingResult;
+
+import controllers.BooksController;
+import models.BookUpdateDTO;
+import models.Books;
+import models.BooksDTO;
+import repository.BookRepository;
+
+//The BooksController handlers called on the real bean, with the app running against an embedded H2 catalog of catalogSize books.
+//HTTP and the security filter chain are not part of the measurement.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BooksControllerBenchmark {
+
+	@Param({"10000"})
+	public int catalogSize;
+
+	private ConfigurableApplicationContext context;
+	private BooksController controller;
+	private long created;
+
+	@Setup
+	public void setup() {
+		context = BenchmarkApp.start();
+		controller = context.getBean(BooksController.class);
+		
+		List<Books> books = new ArrayList<>(catalogSize);
+		for (int i = 0; i < catalogSize; i++) {
+			books.add(BooksSerializationBenchmark.newBook(i));
+		}
+		context.getBean(BookRepository.class).upsertAll(books, 1000);
+	}
+
+	@TearDown
+	public void stop() {
+		context.close();
+	}
+
+	private String randomIsbn() {
+		return BooksSerializationBenchmark.newBook(ThreadLocalRandom.current().nextInt(catalogSize)).getIsbn();
+	}
+
+	@Benchmark
+	public ResponseEntity<?> showBook() {
+		return controller.showBooks(randomIsbn(), null, null);
+	}
+
+	@Benchmark
+	public ResponseEntity<?> showBooksPage() {
+		return controller.showBooksPage(randomIsbn(), 50, null, null);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Measurement(iterations = 10)
+	public void streamAllBooks() throws IOException {
+		controller.streamBooks(null, null, null).getBody().writeTo(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Measurement(iterations = 10)
+	public void streamAllBooksGzip() throws IOException {
+		controller.streamBooks(null, "gzip", null).getBody().writeTo(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public ResponseEntity<?> addBook() {
+		BooksDTO dto = new BooksDTO("Bench Author", "Bench Title", 19.99, "new-" + created++);
+		return controller.addBookSubmit(dto, new BeanPropertyBindingResult(dto, "bookDTO"), null, null, null);
+	}
+
+	@Benchmark
+	public ResponseEntity<?> updateBook() {
+		BookUpdateDTO dto = new BookUpdateDTO();
+		dto.setPrice(ThreadLocalRandom.current().nextDouble(1, 100));
+		return controller.updateBook(randomIsbn(), dto, new BeanPropertyBindingResult(dto, "updateDTO"), null);
+	}
+
+}
@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import models.Books;
+
+//Jackson cost of the book payloads, with an ObjectMapper configured the way Spring Boot configures it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BooksSerializationBenchmark {
+
+	@Param({"10", "1000"})
+	public int listSize;
+
+	private ObjectMapper objectMapper;
+	private Books book;
+	private List<Books> books;
+	private byte[] bookJson;
+	private byte[] booksJson;
+
+	@Setup
+	public void setup() throws JsonProcessingException {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		books = new ArrayList<>(listSize);
+		for (int i = 0; i < listSize; i++) {
+			books.add(newBook(i));
+		}
+		book = books.getFirst();
+		bookJson = objectMapper.writeValueAsBytes(book);
+		booksJson = objectMapper.writeValueAsBytes(books);
+	}
+
+	static Books newBook(int i) {
+		Books book = new Books();
+		book.setIsbn("978-0-" + String.format("%08d", i));
+		book.setAuthor("Author " + (i % 500));
+		book.setTitle("A Reasonably Long Book Title Number " + i);
+		book.setPrice(5 + (i % 9000) / 100.0);
+		return book;
+	}
+
+	@Benchmark
+	public byte[] serializeBook() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(book);
+	}
+
+	@Benchmark
+	public byte[] serializeList() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(books);
+	}
+
+	@Benchmark
+	public Books deserializeBook() throws Exception {
+		return objectMapper.readValue(bookJson, Books.class);
+	}
+
+	@Benchmark
+	public Books[] deserializeList() throws Exception {
+		return objectMapper.readValue(booksJson, Books[].class);
+	}
+
+}
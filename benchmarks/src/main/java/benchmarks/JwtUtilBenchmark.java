@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import security.JwtUtil;
+
+//Token issuing (login, refresh) and validation (every authenticated request)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+	private JwtUtil jwtUtil;
+	private JwtUtil uncachedJwtUtil;
+	private UserDetails user;
+	private String token;
+
+	@Setup
+	public void setup() {
+		user = User.withUsername("bench-user").password("{noop}password").roles("USER").build();
+		InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(user);
+		jwtUtil = new JwtUtil(JwtFilterBenchmark.SECRET, 15 * 60 * 1000, 7 * 24 * 60 * 60 * 1000L, users, 10_000, TokenRevocationBenchmark.emptyStore());
+		//a zero sized cache makes every validation pay for the full signature check
+		uncachedJwtUtil = new JwtUtil(JwtFilterBenchmark.SECRET, 15 * 60 * 1000, 7 * 24 * 60 * 60 * 1000L, users, 0, TokenRevocationBenchmark.emptyStore());
+		token = jwtUtil.generateToken(user);
+	}
+
+	@Benchmark
+	public String generateToken() {
+		return jwtUtil.generateToken(user);
+	}
+
+	@Benchmark
+	public String generateRefreshToken() {
+		return jwtUtil.generateRefreshToken(user);
+	}
+
+	@Benchmark
+	public boolean validateAccessToken() {
+		return jwtUtil.validateAccessToken(token, user);
+	}
+
+	@Benchmark
+	public boolean validateAccessTokenCacheMiss() {
+		return uncachedJwtUtil.validateAccessToken(token, user);
+	}
+
+}
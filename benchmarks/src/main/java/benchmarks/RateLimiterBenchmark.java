@@ -0,0 +1,97 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import security.RateLimiter;
+
+//RateLimitFilter's bucket check under contention: 64 threads on one hot client, or spread over clients distinct clients.
+//lockedBucket is a classic token bucket behind a monitor, kept in the same kind of bounded idle-expiring cache, what a
+//straightforward synchronized version would cost.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class RateLimiterBenchmark {
+
+	@Param({"1", "1024"})
+	public int clients;
+
+	private RateLimiter rateLimiter;
+	private String[] keys;
+	private Cache<String, LockedBucket> lockedBuckets;
+
+	@Setup
+	public void setup() {
+		//a huge refill so the benchmark measures the check itself and not a mix of allowed and rejected requests
+		rateLimiter = new RateLimiter(Map.of("default", new RateLimiter.Limit(1_000, 1_000_000_000)), 100_000);
+		keys = new String[clients];
+		lockedBuckets = Caffeine.newBuilder().maximumSize(100_000).expireAfterAccess(1, TimeUnit.SECONDS).build();
+		for (int i = 0; i < clients; i++) {
+			keys[i] = "user:bench-" + i;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	public boolean lockFreeBucket(Cursor cursor) {
+		int client = cursor.next++ % clients;
+		return rateLimiter.acquire("default", keys[client]).isAllowed();
+	}
+
+	@Benchmark
+	public boolean lockedBucket(Cursor cursor) {
+		int client = cursor.next++ % clients;
+		return lockedBuckets.get(keys[client], key -> new LockedBucket(1_000, 1_000_000_000)).acquire(System.nanoTime());
+	}
+
+	//the classic tokens-and-timestamp bucket, both fields guarded by the monitor
+	static final class LockedBucket {
+
+		private final double capacity;
+		private final double tokensPerNano;
+		private double tokens;
+		private long refilledAt = System.nanoTime();
+
+		LockedBucket(long capacity, double refillPerSecond) {
+			this.capacity = capacity;
+			this.tokensPerNano = refillPerSecond / 1e9;
+			this.tokens = capacity;
+		}
+
+		synchronized boolean acquire(long now) {
+			tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+			refilledAt = now;
+			if (tokens < 1) {
+				return false;
+			}
+			tokens--;
+			return true;
+		}
+
+	}
+
+}
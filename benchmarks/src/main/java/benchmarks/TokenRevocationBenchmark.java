@@ -0,0 +1,107 @@
+package benchmarks;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import security.TokenRevocationStore;
+
+//The revocation check every refresh and access token validation now makes, for a token that was not revoked
+//(the common case), against an H2 revoked_tokens table of revokedTokens rows
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenRevocationBenchmark {
+
+	@Param({"100000"})
+	public int revokedTokens;
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private TokenRevocationStore store;
+	private String[] liveIds;
+	private int next;
+
+	//A store over an empty in-memory schema, for the benchmarks that only need JwtUtil
+	static TokenRevocationStore emptyStore() {
+		return new TokenRevocationStore(new JdbcTemplate(newDatabase()), 10_000, 0.01, 0, 0);
+	}
+
+	private static EmbeddedDatabase newDatabase() {
+		return new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true)
+				.addScript("schema.sql")
+				.build();
+	}
+
+	@Setup
+	public void setup() {
+		database = newDatabase();
+		jdbcTemplate = new JdbcTemplate(database);
+		Timestamp expiresAt = new Timestamp(System.currentTimeMillis() + 3_600_000);
+		for (int i = 0; i < revokedTokens; i++) {
+			jdbcTemplate.update("insert into revoked_tokens (jti, expires_at) values (?, ?)", UUID.randomUUID().toString(), expiresAt);
+		}
+		store = new TokenRevocationStore(jdbcTemplate, 10_000, 0.01, 0, 0);
+		store.afterSingletonsInstantiated();
+
+		liveIds = new String[4096];
+		for (int i = 0; i < liveIds.length; i++) {
+			liveIds[i] = UUID.randomUUID().toString();
+		}
+	}
+
+	@TearDown
+	public void stop() {
+		database.shutdown();
+	}
+
+	private String nextId() {
+		next = (next + 1) & (liveIds.length - 1);
+		return liveIds[next];
+	}
+
+	@Benchmark
+	public boolean bloomFilterFront() {
+		return store.isRevoked(nextId());
+	}
+
+	//what a plain lookup per check would cost, even against an in-process database
+	@Benchmark
+	public boolean databaseLookup() {
+		Long count = jdbcTemplate.queryForObject("select count(*) from revoked_tokens where jti = ? and expires_at > ?", Long.class,
+				nextId(), new Timestamp(System.currentTimeMillis()));
+		return count != null && count > 0;
+	}
+
+	//revoke followed by the check of the revoked id, which the exact set answers
+	@Benchmark
+	public boolean revokeAndCheck() {
+		String jti = UUID.randomUUID().toString();
+		store.revoke(jti, new Date(System.currentTimeMillis() + 3_600_000));
+		return store.isRevoked(jti);
+	}
+
+}
@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.provisioning.UserDetailsManager;
+
+import models.Books;
+import repository.BookRepository;
+import security.JwtUtil;
+
+//Authenticated HTTP requests against the embedded Tomcat, once on the platform thread pool and once with
+//spring.threads.virtual.enabled. There are more client threads than Tomcat's default 200 workers, so the platform
+//mode has to queue. Throughput mode gives requests/sec, SampleTime gives the p99 latency.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(256)
+@Fork(1)
+public class VirtualThreadsBenchmark {
+
+	@Param({"false", "true"})
+	public boolean virtualThreads;
+
+	@Param({"10000"})
+	public int catalogSize;
+
+	private ConfigurableApplicationContext context;
+	private HttpClient client;
+	private String baseUrl;
+	private String bearer;
+
+	@Setup
+	public void setup() {
+		context = BenchmarkApp.start("spring.threads.virtual.enabled=" + virtualThreads);
+		baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+		List<Books> books = new ArrayList<>(catalogSize);
+		for (int i = 0; i < catalogSize; i++) {
+			books.add(BooksSerializationBenchmark.newBook(i));
+		}
+		context.getBean(BookRepository.class).upsertAll(books, 1000);
+
+		UserDetails user = User.withUsername("bench").password("{noop}bench").roles("USER").build();
+		context.getBean(UserDetailsManager.class).createUser(user);
+		bearer = "Bearer " + context.getBean(JwtUtil.class).generateToken(user);
+
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	}
+
+	@TearDown
+	public void stop() {
+		client.close();
+		context.close();
+	}
+
+	private int get(String path) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+				.header("Authorization", bearer)
+				.build();
+		int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+		if (status != 200) {
+			throw new IllegalStateException("GET " + path + " returned " + status);
+		}
+		return status;
+	}
+
+	private String randomIsbn() {
+		return BooksSerializationBenchmark.newBook(ThreadLocalRandom.current().nextInt(catalogSize)).getIsbn();
+	}
+
+	//served from the near cache after warmup, so mostly CPU
+	@Benchmark
+	public int getBook() throws IOException, InterruptedException {
+		return get("/books/" + randomIsbn());
+	}
+
+	//one keyset query per request, so requests queue on the connection pool
+	@Benchmark
+	public int getBooksPage() throws IOException, InterruptedException {
+		return get("/books?limit=50&after=" + randomIsbn());
+	}
+
+}
@@ -3,6 +3,7 @@ package controllers;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.userdetails.User;
@@ -11,15 +12,18 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.UserDetailsManager;
 import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import io.jsonwebtoken.JwtException;
 import jakarta.validation.Valid;
 import models.UserDTO;
 import security.JwtUtil;
+import security.PasswordHashingRejectedException;
 import service.AuthService;
 
 @RestController
@@ -115,4 +119,41 @@ public class AuthController {
 			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not found in the database");
 		}
 	}
+	
+	//Logout: the refresh token, and the access token when one is sent, stop working right away instead of at expiry
+	@PostMapping({"/revoke", "/revoke/"})
+	public ResponseEntity<?> revoke(@RequestHeader("Refresh") String authRefreshHeader,
+			@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader){
+		if (authRefreshHeader == null || !authRefreshHeader.startsWith("Bearer ")) {
+			return ResponseEntity.badRequest().body("Invalid or malformed refresh token");
+		}
+		
+		String refreshToken = authRefreshHeader.substring(7);
+		if(!jwtUtil.validateRefreshToken(refreshToken)) {
+			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid or expired refresh token");
+		}
+		jwtUtil.revoke(refreshToken);
+		
+		//only revoked when it belongs to the same user, a stale or foreign access token is ignored
+		if (authHeader != null && authHeader.startsWith("Bearer ")) {
+			String accessToken = authHeader.substring(7);
+			try {
+				if (jwtUtil.getUsernameFromToken(accessToken).equals(jwtUtil.getUsernameFromToken(refreshToken))) {
+					jwtUtil.revoke(accessToken);
+				}
+			}
+			catch (JwtException e) {
+				//expired or invalid, nothing to revoke
+			}
+		}
+		return ResponseEntity.noContent().build();
+	}
+	
+	//login and signup hash on a bounded pool, when it is saturated the client should back off instead of queueing here
+	@ExceptionHandler(PasswordHashingRejectedException.class)
+	public ResponseEntity<?> hashingRejected(PasswordHashingRejectedException e) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+				.body(Map.of("error", "Too many login attempts, try again later"));
+	}
 }
@@ -0,0 +1,48 @@
+package controllers;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import service.BookChangeFeed;
+
+@RestController
+public class BookChangesController {
+
+	private final BookChangeFeed changeFeed;
+
+	public BookChangesController(BookChangeFeed changeFeed) {
+		super();
+		this.changeFeed = changeFeed;
+	}
+
+	//Server-Sent Events of every catalog write: saved (insert or overwrite, the whole book), updated (the changed
+	//fields) and deleted (the isbn). A mirror loads GET /books once and then follows this instead of polling.
+	//EventSource resends the last id as Last-Event-ID on reconnect and gets what it missed. A resync event means
+	//that is no longer buffered, or the id is not one of ours: reload GET /books and reconnect.
+	@GetMapping(value = {"/books/changes", "/books/changes/"}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public ResponseEntity<SseEmitter> changes(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+		Long after = null;
+		if (lastEventId != null && !lastEventId.isBlank()) {
+			try {
+				after = Long.parseLong(lastEventId.trim());
+			}
+			catch (NumberFormatException e) {
+				//ahead of every sequence number, so the stream opens with a resync
+				after = Long.MAX_VALUE;
+			}
+		}
+		SseEmitter emitter = changeFeed.subscribe(after);
+		if (emitter == null) {
+			//the emitter return type leaves no room for an error body, the status and Retry-After say it all
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+		}
+		return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+	}
+
+}
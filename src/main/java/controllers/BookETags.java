@@ -0,0 +1,90 @@
+package controllers;
+
+import java.util.List;
+import java.util.Objects;
+
+import models.Books;
+
+//Strong ETags for book representations, computed from the entity fields instead of the serialized body.
+//A single book gets "<version>-<content hash>": If-Match is compared with the current row, then turned into a version
+//check in SQL so a write that slips in between still fails.
+//The content hash guards against a deleted and re-created isbn starting over at the same version.
+//Pages get a 64 bit fingerprint folded over every book in them, in order, the whole catalog one over its catalog version.
+final class BookETags {
+	
+	private BookETags() {
+	}
+	
+	static String of(Books book) {
+		return "\"" + book.getVersion() + "-" + Integer.toHexString(contentHash(book)) + "\"";
+	}
+	
+	//The whole catalog, from BookRepositoryCustom.catalogVersion rather than from the rows
+	static String ofCatalog(long catalogVersion) {
+		return new Fingerprint().add(catalogVersion).etag();
+	}
+	
+	private static int contentHash(Books book) {
+		return Objects.hash(book.getIsbn(), book.getAuthor(), book.getTitle(), book.getPrice(), book.getVersion());
+	}
+	
+	//If-None-Match uses the weak comparison, so W/ prefixes are ignored
+	static boolean noneMatch(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return true;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			String tag = candidate.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals("*") || tag.equals(etag)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	//The version of current when If-Match names its ETag (in any of the BookFormats representations), as the list the
+	//conditional UPDATE/DELETE checks. The whole tag is compared, not just the version: after a delete and re-create the
+	//isbn starts over at the same version, and only the content hash tells a stale tag apart. Returns null for "*"
+	//(any current version will do) and an empty list when nothing matches or there is no current book
+	static List<Long> ifMatchVersions(String ifMatch, Books current) {
+		String etag = current == null ? null : of(current);
+		for (String candidate : ifMatch.split(",")) {
+			String tag = candidate.trim();
+			if (tag.equals("*")) {
+				return null;
+			}
+			if (etag != null && BookFormats.BOOK_TYPES.stream().anyMatch(type -> tag.equals(BookFormats.etag(etag, type)))) {
+				return List.of(current.getVersion());
+			}
+		}
+		return List.of();
+	}
+	
+	static class Fingerprint {
+		
+		private long hash = 1;
+		
+		Fingerprint add(Books book) {
+			hash = 31 * hash + contentHash(book);
+			return this;
+		}
+		
+		Fingerprint add(long value) {
+			hash = 31 * hash + Long.hashCode(value);
+			return this;
+		}
+		
+		Fingerprint add(String value) {
+			hash = 31 * hash + Objects.hashCode(value);
+			return this;
+		}
+		
+		String etag() {
+			return "\"" + Long.toHexString(hash) + "\"";
+		}
+	}
+
+}
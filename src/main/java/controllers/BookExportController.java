@@ -0,0 +1,161 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import models.Books;
+import repository.BookRepository;
+import repository.ReplicaRouting;
+
+//Full catalog dumps for downstream systems. Rows come from the same forward-only, read-only cursor as the streamed
+//GET /books (books.stream.fetchSize, MySQL streams them one by one) and go straight into the response: one JSON object
+//per line or one CSV record per line, nothing is collected, so memory stays flat whatever the catalog size.
+//There is no ETag pass, an export always reads the table once.
+@RestController
+public class BookExportController {
+
+	static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+	static final MediaType CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+	//the columns POST /books/batch reads come first, so an export can be imported again as it is
+	static final CsvSchema CSV_SCHEMA = CsvSchema.builder()
+			.addColumn("isbn")
+			.addColumn("author")
+			.addColumn("title")
+			.addNumberColumn("price")
+			.addNumberColumn("version")
+			.addNumberColumn("updatedAt")
+			.build()
+			.withHeader();
+
+	private final BookRepository bookrepo;
+	private final ObjectMapper objectMapper;
+	private final MeterRegistry meterRegistry;
+	//strict quoting: only values with a separator, a quote or a line break get quoted, not every one with a space
+	private final CsvMapper csvMapper = CsvMapper.builder().enable(CsvGenerator.Feature.STRICT_CHECK_FOR_QUOTING).build();
+
+	public BookExportController(BookRepository bookrepo, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+		super();
+		this.bookrepo = bookrepo;
+		this.objectMapper = objectMapper;
+		this.meterRegistry = meterRegistry;
+	}
+
+	@GetMapping({"/books/export", "/books/export/"})
+	public ResponseEntity<StreamingResponseBody> exportBooks(@RequestParam(defaultValue = "ndjson") String format,
+			@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+		MediaType contentType;
+		if ("ndjson".equals(format)) {
+			contentType = NDJSON;
+		}
+		else if ("csv".equals(format)) {
+			contentType = CSV;
+		}
+		//a streamed body has to be the declared return type, so a bad format is reported with an exception. Not an
+		//IllegalArgumentException with a handler, that would also catch the ones thrown while the body is written
+		else {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "format must be ndjson or csv");
+		}
+		
+		boolean gzip = ContentEncodings.acceptsGzip(acceptEncoding);
+		//the body is written on another thread, which has to follow this request's replica routing
+		ReplicaRouting.Request routing = ReplicaRouting.current();
+		StreamingResponseBody body = out -> export(format, gzip ? ContentEncodings.gzip(out) : out, routing);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+				.contentType(contentType)
+				.varyBy(HttpHeaders.ACCEPT_ENCODING)
+				.header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("books." + format).build().toString());
+		if (gzip) {
+			response.header(HttpHeaders.CONTENT_ENCODING, ContentEncodings.GZIP);
+		}
+		return response.body(body);
+	}
+	
+	//books.export (timer) and books.export.rows (counter) per format, rows/s is their ratio
+	private void export(String format, OutputStream out, ReplicaRouting.Request routing) throws IOException {
+		long started = System.nanoTime();
+		long[] rows = new long[1];
+		String outcome = "failed";
+		ReplicaRouting.Request previous = ReplicaRouting.resume(routing);
+		try {
+			if ("csv".equals(format)) {
+				writeCsv(out, rows);
+			}
+			else {
+				writeNdjson(out, rows);
+			}
+			outcome = "completed";
+		}
+		finally {
+			ReplicaRouting.resume(previous);
+			meterRegistry.timer("books.export", "format", format, "outcome", outcome).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+			meterRegistry.counter("books.export.rows", "format", format).increment(rows[0]);
+		}
+	}
+
+	private void writeNdjson(OutputStream out, long[] rows) throws IOException {
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+			//no root value separator, Jackson's default puts a space in front of every book after the first
+			generator.setRootValueSeparator(null);
+			forEachBook(book -> {
+				generator.writeObject(book);
+				generator.writeRaw('\n');
+				rows[0]++;
+			});
+		}
+	}
+
+	private void writeCsv(OutputStream out, long[] rows) throws IOException {
+		try (SequenceWriter writer = csvMapper.writer(CSV_SCHEMA).writeValues(out)) {
+			forEachBook(book -> {
+				writer.write(book);
+				rows[0]++;
+			});
+		}
+	}
+
+	private void forEachBook(BookWriter action) throws IOException {
+		Consumer<Books> unchecked = book -> {
+			try {
+				action.write(book);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+		try {
+			bookrepo.forEachBook(unchecked);
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	@FunctionalInterface
+	private interface BookWriter {
+		void write(Books book) throws IOException;
+	}
+
+}
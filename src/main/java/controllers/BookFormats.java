@@ -0,0 +1,175 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufFactory;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import models.BookUpdateDTO;
+import models.Books;
+import models.BooksDTO;
+import models.BooksDeltaDTO;
+import models.BooksPageDTO;
+
+//The representations of the book endpoints besides JSON: CBOR and Smile (binary JSON, any body) and Protobuf (the
+//messages in books.proto). All mappers come from Spring Boot's Jackson builder, so they behave like the JSON one.
+//Endpoints with ETags negotiate here themselves instead of leaving it to the message converters: every representation
+//is its own body, so it gets its own ETag, and the ETag has to be known before the body is written.
+@Component
+public class BookFormats {
+
+	static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+	static final MediaType PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+	//in the order a bare */* picks them
+	static final List<MediaType> BOOK_TYPES = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, SMILE, PROTOBUF);
+
+	//protobuf message of each DTO, anything else has no protobuf representation
+	static final Map<Class<?>, String> PROTOBUF_MESSAGES = Map.of(
+			Books.class, "Book",
+			BooksDTO.class, "Book",
+			BookUpdateDTO.class, "Book",
+			BooksPageDTO.class, "BookPage",
+			BooksDeltaDTO.class, "BookDelta");
+	//BookList.books is field 1 of wire type 2 (length-delimited)
+	private static final int BOOK_LIST_ENTRY_TAG = 1 << 3 | 2;
+
+	private final ObjectMapper json;
+	private final ObjectMapper cbor;
+	private final ObjectMapper smile;
+	private final ObjectMapper protobuf;
+	private final NativeProtobufSchema protobufSchema;
+	private final ObjectWriter protobufBookWriter;
+
+	public BookFormats(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder builder) throws IOException {
+		super();
+		this.json = objectMapper;
+		this.cbor = builder.factory(new CBORFactory()).build();
+		this.smile = builder.factory(new SmileFactory()).build();
+		this.protobuf = builder.factory(new ProtobufFactory()).build();
+		this.protobufSchema = ProtobufSchemaLoader.std.loadNative(new ClassPathResource("books.proto").getURL());
+		this.protobufBookWriter = protobuf.writer(protobufSchema("Book"));
+	}
+
+	ObjectMapper cbor() {
+		return cbor;
+	}
+
+	ObjectMapper smile() {
+		return smile;
+	}
+
+	ObjectMapper protobuf() {
+		return protobuf;
+	}
+
+	ProtobufSchema protobufSchema(String message) {
+		return protobufSchema.forType(message);
+	}
+
+	//The first of BOOK_TYPES the Accept header asks for, by q-value and then header order; JSON without a header,
+	//null when none is acceptable
+	static MediaType negotiate(String accept) {
+		if (accept == null || accept.isBlank()) {
+			return MediaType.APPLICATION_JSON;
+		}
+		List<MediaType> accepted;
+		try {
+			accepted = MediaType.parseMediaTypes(accept).stream()
+					.sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed())
+					.toList();
+		}
+		catch (InvalidMediaTypeException e) {
+			return MediaType.APPLICATION_JSON;
+		}
+		for (MediaType type : accepted) {
+			if (type.getQualityValue() == 0) {
+				continue;
+			}
+			for (MediaType candidate : BOOK_TYPES) {
+				if (type.includes(candidate)) {
+					return candidate;
+				}
+			}
+		}
+		return null;
+	}
+
+	//"abc" -> "abc-cbor", JSON keeps the plain ETag. The version in front stays parseable for If-Match
+	static String etag(String etag, MediaType type) {
+		if (MediaType.APPLICATION_JSON.equals(type)) {
+			return etag;
+		}
+		String suffix = PROTOBUF.equals(type) ? "protobuf" : SMILE.equals(type) ? "smile" : type.getSubtype();
+		return etag.substring(0, etag.length() - 1) + "-" + suffix + "\"";
+	}
+
+	//Writes a list one book at a time: a JSON, CBOR or Smile array, or the entries of a protobuf BookList
+	BookListWriter listWriter(MediaType type, OutputStream out) throws IOException {
+		if (PROTOBUF.equals(type)) {
+			return new BookListWriter() {
+				@Override
+				public void write(Books book) throws IOException {
+					byte[] message = protobufBookWriter.writeValueAsBytes(book);
+					writeVarint(out, BOOK_LIST_ENTRY_TAG);
+					writeVarint(out, message.length);
+					out.write(message);
+				}
+
+				@Override
+				public void close() throws IOException {
+					out.close();
+				}
+			};
+		}
+		ObjectMapper mapper = MediaType.APPLICATION_CBOR.equals(type) ? cbor : SMILE.equals(type) ? smile : json;
+		JsonGenerator generator = mapper.getFactory().createGenerator(out);
+		generator.writeStartArray();
+		return new BookListWriter() {
+			@Override
+			public void write(Books book) throws IOException {
+				generator.writeObject(book);
+			}
+
+			@Override
+			public void close() throws IOException {
+				generator.writeEndArray();
+				generator.close();
+			}
+		};
+	}
+
+	private static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	interface BookListWriter extends AutoCloseable {
+
+		void write(Books book) throws IOException;
+
+		@Override
+		void close() throws IOException;
+
+	}
+
+}
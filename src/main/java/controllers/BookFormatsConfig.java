@@ -0,0 +1,33 @@
+package controllers;
+
+import java.util.List;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+//Spring MVC registers CBOR and Smile converters on its own once the dataformats are on the classpath, but with
+//mappers that skip Spring Boot's Jackson settings. Those are replaced with the ones of BookFormats, and protobuf
+//is added. All of them go after the JSON converter, so clients that accept anything keep getting JSON.
+@Configuration
+public class BookFormatsConfig implements WebMvcConfigurer {
+
+	private final BookFormats formats;
+
+	public BookFormatsConfig(BookFormats formats) {
+		super();
+		this.formats = formats;
+	}
+
+	@Override
+	public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+		converters.removeIf(converter -> converter instanceof MappingJackson2CborHttpMessageConverter
+				|| converter instanceof MappingJackson2SmileHttpMessageConverter);
+		converters.add(new MappingJackson2CborHttpMessageConverter(formats.cbor()));
+		converters.add(new MappingJackson2SmileHttpMessageConverter(formats.smile()));
+		converters.add(new BookProtobufHttpMessageConverter(formats));
+	}
+
+}
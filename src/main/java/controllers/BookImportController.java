@@ -0,0 +1,34 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import models.BookImportReportDTO;
+import service.BookImportService;
+
+@RestController
+public class BookImportController {
+	
+	private final BookImportService importService;
+
+	public BookImportController(BookImportService importService) {
+		super();
+		this.importService = importService;
+	}
+	
+	//The body is read as a stream, so the file is never held in memory as a whole
+	@PostMapping(value = {"/books/batch", "/books/batch/"}, consumes = "application/x-ndjson")
+	public ResponseEntity<BookImportReportDTO> importNdjson(InputStream body) throws IOException {
+		return ResponseEntity.ok(importService.importNdjson(body));
+	}
+	
+	@PostMapping(value = {"/books/batch", "/books/batch/"}, consumes = "text/csv")
+	public ResponseEntity<BookImportReportDTO> importCsv(InputStream body) throws IOException {
+		return ResponseEntity.ok(importService.importCsv(body));
+	}
+
+}
@@ -0,0 +1,70 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import com.fasterxml.jackson.core.JacksonException;
+
+//Reads and writes the book DTOs as the protobuf messages of books.proto. Bodies without a message, like the error
+//maps, are left to the other converters, so a client that also accepts JSON gets those as JSON.
+class BookProtobufHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+	private final BookFormats formats;
+
+	BookProtobufHttpMessageConverter(BookFormats formats) {
+		super(BookFormats.PROTOBUF, MediaType.parseMediaType("application/protobuf"));
+		this.formats = formats;
+	}
+
+	private static String message(Type type) {
+		Class<?> clazz = ResolvableType.forType(type).resolve();
+		return clazz == null ? null : BookFormats.PROTOBUF_MESSAGES.get(clazz);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return BookFormats.PROTOBUF_MESSAGES.containsKey(clazz);
+	}
+
+	@Override
+	public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+		return message(type) != null && canRead(mediaType);
+	}
+
+	@Override
+	public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+		return supports(clazz) && canWrite(mediaType);
+	}
+
+	@Override
+	public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+		try {
+			return formats.protobuf().readerFor(ResolvableType.forType(type).resolve())
+					.with(formats.protobufSchema(message(type)))
+					.readValue(inputMessage.getBody());
+		}
+		catch (JacksonException e) {
+			throw new HttpMessageNotReadableException("Malformed protobuf body: " + e.getOriginalMessage(), e, inputMessage);
+		}
+	}
+
+	@Override
+	protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+		return read(clazz, null, inputMessage);
+	}
+
+	@Override
+	protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+		OutputStream out = outputMessage.getBody();
+		formats.protobuf().writer(formats.protobufSchema(message(body.getClass()))).writeValue(out, body);
+	}
+
+}
@@ -0,0 +1,39 @@
+package controllers;
+
+import java.util.Map;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import service.BookSearchIndex;
+
+@RestController
+public class BookSearchController {
+
+	static final int DEFAULT_RESULTS = 20;
+	static final int MAX_RESULTS = 100;
+
+	private final BookSearchIndex searchIndex;
+
+	public BookSearchController(BookSearchIndex searchIndex) {
+		super();
+		this.searchIndex = searchIndex;
+	}
+
+	//Best matches first. Every word of q must start a word of the title or the author, e.g. ?q=tolk lord
+	@GetMapping({"/books/search", "/books/search/"})
+	public ResponseEntity<?> search(@RequestParam(required = false) String q,
+			@RequestParam(required = false) Integer limit) {
+		if (q == null || q.isBlank()) {
+			return ResponseEntity.badRequest().body(Map.of("q", "q cannot be empty"));
+		}
+		int results = limit == null ? DEFAULT_RESULTS : limit;
+		if (results < 1 || results > MAX_RESULTS) {
+			return ResponseEntity.badRequest().body(Map.of("limit", "limit must be between 1 and " + MAX_RESULTS));
+		}
+		return ResponseEntity.ok(searchIndex.search(q, results));
+	}
+
+}
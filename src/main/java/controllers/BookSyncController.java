@@ -0,0 +1,113 @@
+package controllers;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import models.BookTombstone;
+import models.Books;
+import models.BooksDeltaDTO;
+import repository.BookRepository;
+
+@RestController
+public class BookSyncController {
+
+	private final BookRepository bookrepo;
+	private final long settleMillis;
+	private final long retentionMillis;
+
+	public BookSyncController(BookRepository bookrepo, @Value("${books.sync.settleMillis:2000}") long settleMillis,
+			@Value("${books.sync.tombstoneRetentionDays:30}") long retentionDays) {
+		super();
+		this.bookrepo = bookrepo;
+		this.settleMillis = settleMillis;
+		this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+	}
+
+	//Delta sync for clients that poll: ?since=0 the first time, then the nextSince of the previous answer.
+	//since also takes a timestamp (epoch millis or ISO-8601). Changes are returned in the order they were made,
+	//deletions as tombstones, limit at a time. Writes from the last settleMillis are left for the next call, so a
+	//transaction that commits a little after its timestamp was taken is not skipped.
+	@GetMapping(value = {"/books", "/books/"}, params = "since")
+	public ResponseEntity<?> booksSince(@RequestParam String since, @RequestParam(required = false) Integer limit) {
+		int pageSize = limit == null ? BooksController.DEFAULT_PAGE_SIZE : limit;
+		if (pageSize < 1 || pageSize > BooksController.MAX_PAGE_SIZE) {
+			return ResponseEntity.badRequest().body(Map.of("limit", "limit must be between 1 and " + BooksController.MAX_PAGE_SIZE));
+		}
+		
+		//"<millis>:<isbn>" is the keyset of a page that was cut off in the middle of a millisecond
+		long sinceMillis;
+		String afterIsbn = null;
+		try {
+			int colon = since.indexOf(':');
+			if (colon > 0 && since.substring(0, colon).chars().allMatch(Character::isDigit)) {
+				sinceMillis = Long.parseLong(since.substring(0, colon));
+				afterIsbn = since.substring(colon + 1);
+			}
+			else if (!since.isEmpty() && since.chars().allMatch(Character::isDigit)) {
+				sinceMillis = Long.parseLong(since);
+			}
+			else {
+				sinceMillis = Instant.parse(since).toEpochMilli();
+			}
+		}
+		catch (NumberFormatException | DateTimeParseException e) {
+			return ResponseEntity.badRequest().body(Map.of("since", "since must be a nextSince value, epoch millis or an ISO-8601 timestamp"));
+		}
+		
+		long now = System.currentTimeMillis();
+		if (sinceMillis > 0 && sinceMillis < now - retentionMillis) {
+			return ResponseEntity.status(HttpStatus.GONE)
+					.body(Map.of("error", "Deletions that old are no longer kept, reload GET /books and sync with since=0"));
+		}
+		long until = now - settleMillis;
+		if (until <= sinceMillis) {
+			return ResponseEntity.ok(new BooksDeltaDTO(List.of(), List.of(), since, false));
+		}
+		
+		//one extra row from each side tells whether there is more without a count
+		List<Books> changed = bookrepo.findChangedSince(sinceMillis, afterIsbn, until, pageSize + 1);
+		List<BookTombstone> deleted = bookrepo.findDeletedSince(sinceMillis, afterIsbn, until, pageSize + 1);
+		boolean hasMore = changed.size() + deleted.size() > pageSize;
+		
+		//both lists are in (time, isbn) order, the page is the first pageSize of the two merged
+		List<Books> pageBooks = new ArrayList<>();
+		List<BookTombstone> pageDeleted = new ArrayList<>();
+		int b = 0;
+		int d = 0;
+		String last = null;
+		while (b + d < pageSize && (b < changed.size() || d < deleted.size())) {
+			boolean takeBook = d >= deleted.size() || (b < changed.size()
+					&& compare(changed.get(b).getUpdatedAt(), changed.get(b).getIsbn(), deleted.get(d).getDeletedAt(), deleted.get(d).getIsbn()) <= 0);
+			if (takeBook) {
+				Books book = changed.get(b++);
+				pageBooks.add(book);
+				last = book.getUpdatedAt() + ":" + book.getIsbn();
+			}
+			else {
+				BookTombstone tombstone = deleted.get(d++);
+				pageDeleted.add(tombstone);
+				last = tombstone.getDeletedAt() + ":" + tombstone.getIsbn();
+			}
+		}
+		//a complete answer covers everything up to until, the next one starts right after it
+		String nextSince = hasMore ? last : String.valueOf(until);
+		return ResponseEntity.ok(new BooksDeltaDTO(pageBooks, pageDeleted, nextSince, hasMore));
+	}
+
+	private static int compare(long time, String isbn, long otherTime, String otherIsbn) {
+		int byTime = Long.compare(time, otherTime);
+		return byTime != 0 ? byTime : isbn.compareTo(otherIsbn);
+	}
+
+}
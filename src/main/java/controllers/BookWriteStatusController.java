@@ -0,0 +1,45 @@
+package controllers;
+
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import repository.BookRepository;
+import repository.ReplicaRouting;
+import service.BookWriteBehind;
+
+@RestController
+public class BookWriteStatusController {
+
+	private final BookWriteBehind writeBehind;
+	private final BookRepository bookrepo;
+
+	public BookWriteStatusController(BookWriteBehind writeBehind, BookRepository bookrepo) {
+		super();
+		this.writeBehind = writeBehind;
+		this.bookrepo = bookrepo;
+	}
+
+	//Where a POST /books with write-behind points to: pending while the book waits in the queue or its batch is being
+	//written, failed when the batch was given up on (post it again), persisted once the row is in the database.
+	//Works without write-behind too, then a book is either persisted or unknown
+	@GetMapping({"/books/{isbn}/status", "/books/{isbn}/status/"})
+	public ResponseEntity<?> writeStatus(@PathVariable String isbn) {
+		BookWriteBehind.Status status = writeBehind.status(isbn);
+		if (status == BookWriteBehind.Status.PENDING) {
+			return ResponseEntity.ok(Map.of("isbn", isbn, "status", "pending"));
+		}
+		if (status == BookWriteBehind.Status.FAILED) {
+			return ResponseEntity.ok(Map.of("isbn", isbn, "status", "failed", "error", writeBehind.failure(isbn)));
+		}
+		if (ReplicaRouting.readingPrimary(() -> bookrepo.existsByIsbn(isbn))) {
+			return ResponseEntity.ok(Map.of("isbn", isbn, "status", "persisted"));
+		}
+		return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("isbn", isbn, "status", "unknown"));
+	}
+
+}
@@ -1,10 +1,20 @@
 package controllers;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.Principal;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -13,45 +23,220 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import jakarta.validation.Valid;
+import models.BookChangeEvent;
 import models.BookUpdateDTO;
 import models.Books;
 import models.BooksDTO;
+import models.BooksPageDTO;
 import repository.BookRepository;
+import repository.ReplicaRouting;
+import repository.BookSort;
+import service.BookCache;
+import service.BookWriteBehind;
+import service.IdempotencyStore;
 
 @RestController
 public class BooksController {
 	
+	static final int DEFAULT_PAGE_SIZE = 50;
+	static final int MAX_PAGE_SIZE = 500;
+	static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+	
 	private BookRepository bookrepo;
+	private BookFormats formats;
+	private BookCache bookCache;
+	private ApplicationEventPublisher eventPublisher;
+	private IdempotencyStore idempotencyStore;
+	private BookWriteBehind writeBehind;
 	
-	public BooksController(BookRepository bookrepo) {
+	public BooksController(BookRepository bookrepo, BookFormats formats, BookCache bookCache,
+			ApplicationEventPublisher eventPublisher, IdempotencyStore idempotencyStore, BookWriteBehind writeBehind) {
 		this.bookrepo = bookrepo;
+		this.formats = formats;
+		this.bookCache = bookCache;
+		this.eventPublisher = eventPublisher;
+		this.idempotencyStore = idempotencyStore;
+		this.writeBehind = writeBehind;
 	}
 
+	//Without ?after= or ?limit= the whole table is streamed to the client row by row as a plain JSON array.
+	//The ETag has to be in the headers before the first row goes out, so it comes from the catalog version, which every
+	//write bumps in its transaction: a primary key lookup instead of a second pass over the table. It is read before
+	//the rows: a write in between makes the body newer than its ETag, which only costs the client one more full
+	//response, never a 304 for data it does not have.
+	//Clients that accept gzip get the rows compressed on the fly through a fixed size buffer, nothing is collected first.
+	//CBOR, Smile and protobuf (a BookList) are streamed the same way, see BookFormats.
+	@GetMapping(value = {"/books", "/books/"}, params = {"!after", "!limit", "!since"})
+	public ResponseEntity<StreamingResponseBody> streamBooks(
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+			@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		
+		MediaType type = BookFormats.negotiate(accept);
+		if (type == null) {
+			return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+		}
+		boolean gzip = ContentEncodings.acceptsGzip(acceptEncoding);
+		String typeETag = BookFormats.etag(BookETags.ofCatalog(bookrepo.catalogVersion()), type);
+		String etag = gzip ? ContentEncodings.gzipETag(typeETag) : typeETag;
+		if (!BookETags.noneMatch(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).build();
+		}
+		
+		//the body is written on another thread, which has to read from the same database as the stamp
+		ReplicaRouting.Request routing = ReplicaRouting.current();
+		if (gzip) {
+			StreamingResponseBody body = out -> writeAllBooks(type, ContentEncodings.gzip(out), routing);
+			return ResponseEntity.ok().contentType(type).eTag(etag).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+					.header(HttpHeaders.CONTENT_ENCODING, ContentEncodings.GZIP).body(body);
+		}
+		StreamingResponseBody body = out -> writeAllBooks(type, out, routing);
+		return ResponseEntity.ok().contentType(type).eTag(etag).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).body(body);
+	}
+	
+	//With ?after= and/or ?limit= this returns one keyset page plus the cursor for the next one
 	@GetMapping({"/books", "/books/"})
-	public List<Books> showBooks() {
-		List<Books> books = bookrepo.findAll();
-		return books;
+	public ResponseEntity<?> showBooksPage(@RequestParam(required = false) String after,
+			@RequestParam(required = false) Integer limit,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		
+		int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+		if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+			return ResponseEntity.badRequest().body(Map.of("limit", "limit must be between 1 and " + MAX_PAGE_SIZE));
+		}
+		
+		//Fetch one extra row so we know whether there is a next page without running a count query
+		List<Books> books = bookrepo.findByIsbnGreaterThanOrderByIsbnAsc(after == null ? "" : after, Limit.of(pageSize + 1));
+		String nextCursor = null;
+		if (books.size() > pageSize) {
+			books = books.subList(0, pageSize);
+			nextCursor = books.getLast().getIsbn();
+		}
+		
+		MediaType type = BookFormats.negotiate(accept);
+		if (type == null) {
+			return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+		}
+		BookETags.Fingerprint fingerprint = new BookETags.Fingerprint();
+		books.forEach(fingerprint::add);
+		String etag = BookFormats.etag(fingerprint.add(nextCursor).etag(), type);
+		if (!BookETags.noneMatch(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+		}
+		
+		return ResponseEntity.ok().contentType(type).eTag(etag).varyBy(HttpHeaders.ACCEPT).body(new BooksPageDTO(books, nextCursor));
+	}
+	
+	//e.g. ?author=Jane Doe&minPrice=5&maxPrice=20&sort=-price&limit=20&offset=40. Every filter is optional
+	@GetMapping({"/books/filter", "/books/filter/"})
+	public ResponseEntity<?> filterBooks(@RequestParam(required = false) String author,
+			@RequestParam(required = false) Double minPrice,
+			@RequestParam(required = false) Double maxPrice,
+			@RequestParam(required = false, defaultValue = "isbn") String sort,
+			@RequestParam(required = false) Integer limit,
+			@RequestParam(required = false, defaultValue = "0") int offset) {
+		
+		Map<String, String> errors = new HashMap<>();
+		BookSort order = BookSort.fromParam(sort);
+		if (order == null) {
+			errors.put("sort", "sort must be one of isbn, price, -price, title, -title");
+		}
+		int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+		if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+			errors.put("limit", "limit must be between 1 and " + MAX_PAGE_SIZE);
+		}
+		if (offset < 0) {
+			errors.put("offset", "offset cannot be negative");
+		}
+		if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+			errors.put("minPrice", "minPrice cannot be greater than maxPrice");
+		}
+		if (!errors.isEmpty()) {
+			return ResponseEntity.badRequest().body(errors);
+		}
+		
+		return ResponseEntity.ok(bookrepo.findSummaries(author, minPrice, maxPrice, order, pageSize, offset));
+	}
+	
+	private void writeAllBooks(MediaType type, OutputStream out, ReplicaRouting.Request routing) throws IOException {
+		ReplicaRouting.Request previous = ReplicaRouting.resume(routing);
+		try (BookFormats.BookListWriter writer = formats.listWriter(type, out)) {
+			try {
+				bookrepo.forEachBook(book -> {
+					try {
+						writer.write(book);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+			catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+		finally {
+			ReplicaRouting.resume(previous);
+		}
 	}
 	
 	@GetMapping({"/books/{isbn}", "/books/{isbn}/"})
-	public ResponseEntity<?> showBooks(@PathVariable String isbn) {
-		Books book = bookrepo.findById(isbn).orElse(null);
+	public ResponseEntity<?> showBooks(@PathVariable String isbn,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+		Books book = bookCache.find(isbn).orElse(null);
 		
 		if (book == null) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No book with ISBN " + isbn + " found");
 			
 		}
 		
-		return ResponseEntity.ok(book);
+		MediaType type = BookFormats.negotiate(accept);
+		if (type == null) {
+			return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+		}
+		
+		//Not modified goes out before the entity is ever serialized
+		String etag = BookFormats.etag(BookETags.of(book), type);
+		if (!BookETags.noneMatch(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+		}
+		
+		return ResponseEntity.ok().contentType(type).eTag(etag).varyBy(HttpHeaders.ACCEPT).body(book);
 	}
 	
+	//With an Idempotency-Key a retry gets the stored response of the first attempt (marked Idempotent-Replayed)
+	//and never reaches the database. Keys are per principal and up to 255 characters
 	@PostMapping("/books")
     public ResponseEntity<?> addBookSubmit(@Valid @RequestBody BooksDTO bookDTO,
-                                BindingResult bindingResult) {
+                                BindingResult bindingResult,
+                                @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                Principal principal) {
 
+        MediaType type = BookFormats.negotiate(accept);
+        if (type == null) {
+        	return ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build();
+        }
+        if (idempotencyKey == null) {
+        	return addBook(bookDTO, bindingResult, type);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > 255) {
+        	return ResponseEntity.badRequest().body(Map.of(IDEMPOTENCY_KEY, "Idempotency-Key must be 1 to 255 characters"));
+        }
+        String key = (principal == null ? "" : principal.getName()) + "\n" + idempotencyKey;
+        List<Object> fingerprint = Arrays.asList(bookDTO.getIsbn(), bookDTO.getTitle(), bookDTO.getAuthor(), bookDTO.getPrice());
+        return idempotencyStore.execute(key, fingerprint, () -> addBook(bookDTO, bindingResult, type));
+	}
+	
+    private ResponseEntity<?> addBook(BooksDTO bookDTO, BindingResult bindingResult, MediaType type) {
         if (bindingResult.hasErrors()) {
         	Map<String, String> map = new HashMap<>();
         	bindingResult.getFieldErrors().forEach(error -> map.put(error.getField(), error.getDefaultMessage()));
@@ -59,22 +244,49 @@ public class BooksController {
         	
         }
 
+        if (writeBehind.isEnabled()) {
+        	return queueBook(bookDTO);
+        }
 
-        Books book = new Books();
+        //Load the existing row, if any, so an update keeps its version. save() on a new Books with a null version
+        //is a plain INSERT, so this is the same SELECT + INSERT/UPDATE the merge used to do
+        Books book = bookrepo.findById(bookDTO.getIsbn()).orElseGet(Books::new);
         book.setIsbn(bookDTO.getIsbn());
         book.setTitle(bookDTO.getTitle());
         book.setAuthor(bookDTO.getAuthor());
         book.setPrice(bookDTO.getPrice());
 
 
-        bookrepo.save(book);
-        return ResponseEntity.status(HttpStatus.ACCEPTED).body(book);
+        Books saved = bookrepo.save(book);
+        eventPublisher.publishEvent(BookChangeEvent.saved(saved));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).contentType(type).eTag(BookFormats.etag(BookETags.of(saved), type))
+        		.varyBy(HttpHeaders.ACCEPT).body(saved);
+	}
+	
+	//Write-behind: no database work in the request, the writer thread persists the book with the next group commit.
+	//There is no version yet, so no ETag, the Location is where to ask whether the book has been written.
+	//A full queue is a 503 with a Retry-After of about the time it takes to drain
+	private ResponseEntity<?> queueBook(BooksDTO bookDTO) {
+		Books book = new Books();
+		book.setIsbn(bookDTO.getIsbn());
+		book.setTitle(bookDTO.getTitle());
+		book.setAuthor(bookDTO.getAuthor());
+		book.setPrice(bookDTO.getPrice());
+		if (!writeBehind.offer(book)) {
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(writeBehind.retryAfterSeconds()))
+					.body(Map.of("error", "Too many books waiting to be written, try again later"));
+		}
+		return ResponseEntity.status(HttpStatus.ACCEPTED)
+				.location(UriComponentsBuilder.fromPath("/books/{isbn}/status").buildAndExpand(book.getIsbn()).encode().toUri())
+				.body(book);
 	}
 	@PatchMapping({"/books/{isbn}", "/books/{isbn}"})
 	public ResponseEntity<?> updateBook(
 	        @PathVariable String isbn,
 	        @RequestBody @Valid BookUpdateDTO updateDTO,
-	        BindingResult bindingResult) {
+	        BindingResult bindingResult,
+	        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
 	    if (bindingResult.hasErrors()) {
 	        Map<String, String> errors = new HashMap<>();
@@ -83,41 +295,58 @@ public class BooksController {
 	        return ResponseEntity.badRequest().body(errors);
 	    }
 
-	    Books book = bookrepo.findById(isbn).orElse(null);
-	    if (book == null) {
+	    //One UPDATE, the affected row count tells us whether the book exists (and, with If-Match, whether it still has that version)
+	    List<Long> versions = ifMatch == null ? null : BookETags.ifMatchVersions(ifMatch, bookrepo.findCurrent(isbn).orElse(null));
+	    int updated = versions == null
+	            ? bookrepo.updateFields(isbn, updateDTO.getTitle(), updateDTO.getAuthor(), updateDTO.getPrice())
+	            : versions.isEmpty() ? 0
+	            : bookrepo.updateFieldsIfVersion(isbn, versions, updateDTO.getTitle(), updateDTO.getAuthor(), updateDTO.getPrice());
+	    if (updated == 0) {
+	        if (versions != null && bookrepo.existsById(isbn)) {
+	            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+	                                 .body(Map.of("error", "Book with ISBN " + isbn + " was changed since it was read"));
+	        }
 	        return ResponseEntity.status(HttpStatus.NOT_FOUND)
 	                             .body(Map.of("error", "Book not found with ISBN: " + isbn));
 	    }
 
-	    // apply only non-null updates
+	    eventPublisher.publishEvent(BookChangeEvent.updated(isbn, updateDTO));
+
+	    // echo back what was applied
+	    Map<String, Object> applied = new LinkedHashMap<>();
+	    applied.put("isbn", isbn);
 	    if (updateDTO.getTitle() != null) {
-	        book.setTitle(updateDTO.getTitle());
+	        applied.put("title", updateDTO.getTitle());
 	    }
 	    if (updateDTO.getAuthor() != null) {
-	        book.setAuthor(updateDTO.getAuthor());
+	        applied.put("author", updateDTO.getAuthor());
 	    }
 	    if (updateDTO.getPrice() != null) {
-	        book.setPrice(updateDTO.getPrice());
+	        applied.put("price", updateDTO.getPrice());
 	    }
-
-	    bookrepo.save(book);
-	    return ResponseEntity.ok(book);
+	    return ResponseEntity.ok(applied);
 	}
 	
     @DeleteMapping({"/books/{isbn}", "/books/{isbn}"})
-    public ResponseEntity<?> deleteBook(@PathVariable String isbn) {
-    	
-    	
-    	Books book = bookrepo.findById(isbn).orElse(null);
+    public ResponseEntity<?> deleteBook(@PathVariable String isbn,
+    		@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
     	
-    	if (book == null) {
+    	//One DELETE, no need to load the row first
+    	List<Long> versions = ifMatch == null ? null : BookETags.ifMatchVersions(ifMatch, bookrepo.findCurrent(isbn).orElse(null));
+    	int deleted = versions == null ? bookrepo.deleteByIsbn(isbn)
+    			: versions.isEmpty() ? 0 : bookrepo.deleteByIsbnIfVersion(isbn, versions);
+    	if (deleted == 0) {
+    		if (versions != null && bookrepo.existsById(isbn)) {
+    			return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+    					.body(Map.of("error", "Book with ISBN " + isbn + " was changed since it was read"));
+    		}
     		Map <String, String> map = new HashMap<>();
     		map.put("error", "isbn cannot be null");
     		return ResponseEntity.status(HttpStatus.NOT_FOUND).body(map);
     	}
     	
-       bookrepo.delete(book);
-       return ResponseEntity.status(HttpStatus.NO_CONTENT).body(book); 
+       eventPublisher.publishEvent(BookChangeEvent.deleted(isbn));
+       return ResponseEntity.noContent().build(); 
     }
     
 
@@ -0,0 +1,54 @@
+package controllers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import security.CachingUserDetailsManager;
+import service.BookCache;
+
+@RestController
+public class CacheStatsController {
+	
+	private final BookCache bookCache;
+	private final UserDetailsManager userDetailsManager;
+
+	public CacheStatsController(BookCache bookCache, UserDetailsManager userDetailsManager) {
+		super();
+		this.bookCache = bookCache;
+		this.userDetailsManager = userDetailsManager;
+	}
+	
+	//Counters since startup for the in-process caches of this node
+	@GetMapping({"/cache/stats", "/cache/stats/"})
+	public Map<String, Object> cacheStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("books", toMap(bookCache.stats(), bookCache.size()));
+		if (userDetailsManager instanceof CachingUserDetailsManager cachingManager) {
+			stats.put("users", toMap(cachingManager.stats(), null));
+		}
+		return stats;
+	}
+	
+	private static Map<String, Object> toMap(CacheStats cacheStats, Long size) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		if (size != null) {
+			map.put("size", size);
+		}
+		map.put("hits", cacheStats.hitCount());
+		map.put("misses", cacheStats.missCount());
+		map.put("hitRate", cacheStats.hitRate());
+		map.put("loads", cacheStats.loadCount());
+		map.put("loadFailures", cacheStats.loadFailureCount());
+		map.put("averageLoadMillis", cacheStats.averageLoadPenalty() / 1_000_000.0);
+		map.put("totalLoadMillis", cacheStats.totalLoadTime() / 1_000_000.0);
+		map.put("evictions", cacheStats.evictionCount());
+		return map;
+	}
+
+}
@@ -0,0 +1,27 @@
+package controllers;
+
+import java.util.Map;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+//An exhausted books pool (or a database that is down) is a 503 with Retry-After rather than a 500. How long a request
+//waits for a connection before it gets here is spring.datasource.hikari.connection-timeout, see datasource.properties.
+@RestControllerAdvice
+public class DatabaseUnavailableAdvice {
+
+	@ExceptionHandler({DataAccessResourceFailureException.class, TransientDataAccessResourceException.class,
+			CannotCreateTransactionException.class})
+	public ResponseEntity<?> databaseUnavailable(Exception e) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, "1")
+				.body(Map.of("error", "The database is busy, try again later"));
+	}
+
+}
@@ -0,0 +1,39 @@
+package controllers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import security.BoundedPasswordEncoder;
+
+@RestController
+public class PasswordHashingStatsController {
+
+	private final PasswordEncoder passwordEncoder;
+
+	public PasswordHashingStatsController(PasswordEncoder passwordEncoder) {
+		super();
+		this.passwordEncoder = passwordEncoder;
+	}
+
+	//Queue depth and BCrypt latency of the login/signup hashing pool on this node
+	@GetMapping({"/auth/hashing/stats", "/auth/hashing/stats/"})
+	public Map<String, Object> hashingStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		if (passwordEncoder instanceof BoundedPasswordEncoder bounded) {
+			stats.put("threads", bounded.threads());
+			stats.put("activeThreads", bounded.activeThreads());
+			stats.put("queueDepth", bounded.queueDepth());
+			stats.put("queueCapacity", bounded.queueCapacity());
+			stats.put("hashes", bounded.hashes());
+			stats.put("rejected", bounded.rejected());
+			stats.put("averageHashMillis", bounded.averageHashMillis());
+			stats.put("averageWaitMillis", bounded.averageWaitMillis());
+		}
+		return stats;
+	}
+
+}
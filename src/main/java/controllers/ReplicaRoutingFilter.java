@@ -0,0 +1,48 @@
+package controllers;
+
+import java.io.IOException;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import repository.ReplicaRouting;
+
+//Begins the replica routing of each request. Only GET and HEAD may read from a replica; anything else runs on the
+//primary from the start, so the reads a write depends on are never stale. For read-your-writes a client is its
+//principal once authenticated, its address before that (signup, login).
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 20)
+public class ReplicaRoutingFilter extends OncePerRequestFilter {
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String method = request.getMethod();
+		String address = request.getRemoteAddr();
+		ReplicaRouting.begin(!"GET".equals(method) && !"HEAD".equals(method), () -> client(address));
+		try {
+			filterChain.doFilter(request, response);
+		}
+		finally {
+			ReplicaRouting.end();
+		}
+	}
+
+	private static String client(String address) {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication != null && authentication.isAuthenticated() && !(authentication instanceof AnonymousAuthenticationToken)) {
+			return "user:" + authentication.getName();
+		}
+		return "ip:" + address;
+	}
+
+}
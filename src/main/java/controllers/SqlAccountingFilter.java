@@ -0,0 +1,72 @@
+package controllers;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import repository.SqlAccounting;
+
+//Runs ahead of the security chain, so the user lookups of JwtFilter are counted together with the handler's queries.
+//Every request is logged at FINE with its statement count and JDBC time, requests above sql.accounting.warnThreshold
+//statements at WARNING. With sql.accounting.headers the counts also go out as X-SQL-Statements / X-SQL-Time-Ms.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class SqlAccountingFilter extends OncePerRequestFilter {
+
+	static final String STATEMENTS_HEADER = "X-SQL-Statements";
+	static final String TIME_HEADER = "X-SQL-Time-Ms";
+
+	private final boolean headers;
+	private final long warnThreshold;
+	private Logger logger = Logger.getLogger(SqlAccountingFilter.class.getName());
+
+	public SqlAccountingFilter(@Value("${sql.accounting.headers:false}") boolean headers,
+			@Value("${sql.accounting.warnThreshold:20}") long warnThreshold) {
+		super();
+		this.headers = headers;
+		this.warnThreshold = warnThreshold;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		SqlAccounting.reset();
+		
+		//headers have to be set before the first byte of the body goes out, which is usually before the chain returns
+		HttpServletResponse accounted = headers ? new OnCommittedResponseWrapper(response) {
+			@Override
+			protected void onResponseCommitted() {
+				addCounts(response);
+			}
+		} : response;
+		filterChain.doFilter(request, accounted);
+		if (headers && !response.isCommitted()) {
+			addCounts(response);
+		}
+		
+		long statements = SqlAccounting.statements();
+		if (statements > warnThreshold) {
+			logger.warning(request.getMethod() + " " + request.getRequestURI() + " ran " + SqlAccounting.describe());
+		}
+		else if (logger.isLoggable(Level.FINE)) {
+			logger.fine(request.getMethod() + " " + request.getRequestURI() + " ran " + SqlAccounting.describe());
+		}
+	}
+
+	private static void addCounts(HttpServletResponse response) {
+		response.setHeader(STATEMENTS_HEADER, String.valueOf(SqlAccounting.statements()));
+		response.setHeader(TIME_HEADER, String.valueOf(SqlAccounting.elapsedMillis()));
+	}
+
+}
@@ -3,11 +3,13 @@ package main;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.PropertySource;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 @SpringBootApplication(scanBasePackages = {"controllers", "repository", "service", "security"})
 @EntityScan(basePackages = {"models"})
 @EnableJpaRepositories(basePackages = "repository")
+@PropertySource({"classpath:management.properties", "classpath:datasource.properties"})
 public class CrudAppApplication {
 
 	public static void main(String[] args) {
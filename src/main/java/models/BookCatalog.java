@@ -0,0 +1,35 @@
+package models;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+//A single row whose version every write to the books table bumps in its own transaction, so the ETag of the whole
+//catalog moves with each commit whatever the clocks of the nodes say. Only written by BookRepositoryCustomImpl
+@Entity
+@Table(name = "book_catalog")
+public class BookCatalog {
+
+	public BookCatalog() {
+		super();
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	@Id
+	private int id;
+
+	@ColumnDefault("0")
+	@Column(nullable = false)
+	private long version;
+
+}
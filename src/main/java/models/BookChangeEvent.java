@@ -0,0 +1,57 @@
+package models;
+
+//Published by every write path after its change is committed, so caches and other derived views of the catalog can follow along
+public class BookChangeEvent {
+	
+	public enum Type {
+		//the full book is known, it was inserted or overwritten
+		SAVED,
+		//a PATCH, only the fields set in changes were applied
+		UPDATED,
+		DELETED
+	}
+	
+	private final Type type;
+	private final String isbn;
+	private final Books book;
+	private final BookUpdateDTO changes;
+	
+	private BookChangeEvent(Type type, String isbn, Books book, BookUpdateDTO changes) {
+		super();
+		this.type = type;
+		this.isbn = isbn;
+		this.book = book;
+		this.changes = changes;
+	}
+	
+	public static BookChangeEvent saved(Books book) {
+		return new BookChangeEvent(Type.SAVED, book.getIsbn(), book, null);
+	}
+	
+	public static BookChangeEvent updated(String isbn, BookUpdateDTO changes) {
+		return new BookChangeEvent(Type.UPDATED, isbn, null, changes);
+	}
+	
+	public static BookChangeEvent deleted(String isbn) {
+		return new BookChangeEvent(Type.DELETED, isbn, null, null);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getIsbn() {
+		return isbn;
+	}
+
+	//null unless the type is SAVED
+	public Books getBook() {
+		return book;
+	}
+
+	//null unless the type is UPDATED
+	public BookUpdateDTO getChanges() {
+		return changes;
+	}
+
+}
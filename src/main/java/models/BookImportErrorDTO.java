@@ -0,0 +1,43 @@
+package models;
+
+import java.util.Map;
+
+public class BookImportErrorDTO {
+
+	//1-based line number for NDJSON, 1-based data row (header not counted) for CSV
+	private long record;
+	private String isbn;
+	private Map<String, String> errors;
+
+	public BookImportErrorDTO(long record, String isbn, Map<String, String> errors) {
+		super();
+		this.record = record;
+		this.isbn = isbn;
+		this.errors = errors;
+	}
+
+	public long getRecord() {
+		return record;
+	}
+
+	public void setRecord(long record) {
+		this.record = record;
+	}
+
+	public String getIsbn() {
+		return isbn;
+	}
+
+	public void setIsbn(String isbn) {
+		this.isbn = isbn;
+	}
+
+	public Map<String, String> getErrors() {
+		return errors;
+	}
+
+	public void setErrors(Map<String, String> errors) {
+		this.errors = errors;
+	}
+
+}
@@ -0,0 +1,54 @@
+package models;
+
+import java.util.List;
+
+public class BookImportReportDTO {
+
+	private long received;
+	private long imported;
+	private long failed;
+	
+	//Only the first errors are listed so a completely broken file cannot blow up the response. failed has the full count
+	private List<BookImportErrorDTO> errors;
+
+	public BookImportReportDTO(long received, long imported, long failed, List<BookImportErrorDTO> errors) {
+		super();
+		this.received = received;
+		this.imported = imported;
+		this.failed = failed;
+		this.errors = errors;
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+	public void setReceived(long received) {
+		this.received = received;
+	}
+
+	public long getImported() {
+		return imported;
+	}
+
+	public void setImported(long imported) {
+		this.imported = imported;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public void setFailed(long failed) {
+		this.failed = failed;
+	}
+
+	public List<BookImportErrorDTO> getErrors() {
+		return errors;
+	}
+
+	public void setErrors(List<BookImportErrorDTO> errors) {
+		this.errors = errors;
+	}
+
+}
@@ -0,0 +1,51 @@
+package models;
+
+//The columns GET /books/filter returns, read straight from the result set instead of through a managed Books entity
+public class BookSummaryDTO {
+
+	private String isbn;
+	private String author;
+	private String title;
+	private double price;
+
+	public BookSummaryDTO(String isbn, String author, String title, double price) {
+		super();
+		this.isbn = isbn;
+		this.author = author;
+		this.title = title;
+		this.price = price;
+	}
+
+	public String getIsbn() {
+		return isbn;
+	}
+
+	public void setIsbn(String isbn) {
+		this.isbn = isbn;
+	}
+
+	public String getAuthor() {
+		return author;
+	}
+
+	public void setAuthor(String author) {
+		this.author = author;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public double getPrice() {
+		return price;
+	}
+
+	public void setPrice(double price) {
+		this.price = price;
+	}
+
+}
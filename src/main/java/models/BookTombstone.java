@@ -0,0 +1,54 @@
+package models;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+//What is left of a deleted book, so GET /books?since= can tell clients to drop it. Written by the same statement
+//batch as the DELETE and purged once older than books.sync.tombstoneRetentionDays
+@Entity
+@Table(name = "book_tombstones", indexes = {
+		@Index(name = "idx_book_tombstones_deleted_at", columnList = "deleted_at, isbn")
+})
+public class BookTombstone {
+
+	public BookTombstone() {
+		super();
+	}
+
+	public BookTombstone(String isbn, long deletedAt) {
+		super();
+		this.isbn = isbn;
+		this.deletedAt = deletedAt;
+	}
+
+	public String getIsbn() {
+		return isbn;
+	}
+
+	public void setIsbn(String isbn) {
+		this.isbn = isbn;
+	}
+
+	public long getDeletedAt() {
+		return deletedAt;
+	}
+
+	public void setDeletedAt(long deletedAt) {
+		this.deletedAt = deletedAt;
+	}
+
+	@Id
+	@Column(nullable = false)
+	private String isbn;
+
+	//epoch millis, like Books.updatedAt
+	@ColumnDefault("0")
+	@Column(name = "deleted_at", nullable = false)
+	private long deletedAt;
+
+}
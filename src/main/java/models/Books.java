@@ -3,13 +3,27 @@ package models;
 
 import java.util.Objects;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
+//The secondary indexes back GET /books/filter: author equality with a price range or a title order, and price ranges alone.
+//InnoDB appends the primary key to each of them, which gives the isbn tie-break of every sort for free.
+//idx_books_updated_at is the keyset of GET /books?since=
 @Entity
-@Table(name="books")
+@Table(name="books", indexes = {
+		@Index(name = "idx_books_author_price", columnList = "author, price"),
+		@Index(name = "idx_books_author_title", columnList = "author, title"),
+		@Index(name = "idx_books_price", columnList = "price"),
+		@Index(name = "idx_books_updated_at", columnList = "updated_at, isbn")
+})
 public class Books {
 
 	public String getIsbn() {
@@ -43,6 +57,28 @@ public class Books {
 	public void setPrice(double price) {
 		this.price = price;
 	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+
+	public Long getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void setUpdatedAt(Long updatedAt) {
+		this.updatedAt = updatedAt;
+	}
+	
+	@PrePersist
+	@PreUpdate
+	void stamp() {
+		updatedAt = System.currentTimeMillis();
+	}
 	
 	@Override
     public boolean equals(Object o) {
@@ -67,6 +103,18 @@ public class Books {
 	
 	private double price;
 	
+	//Bumped on every update (JPA, the field updates and the JDBC batch upsert of BookRepositoryCustomImpl). Rows that existed before this column get 0
+	@Version
+	@ColumnDefault("0")
+	@Column(nullable = false)
+	private Long version;
+	
+	//Epoch millis of the last write, from the application clock on every path (JPA, the field updates and the JDBC batches),
+	//so JPA and JDBC writes compare without time zone or precision surprises. Rows older than this column get 0
+	@ColumnDefault("0")
+	@Column(name = "updated_at", nullable = false)
+	private Long updatedAt;
+	
 	
 
 	
@@ -0,0 +1,59 @@
+package models;
+
+import java.util.List;
+
+public class BooksDeltaDTO {
+
+	//inserted or changed since the watermark, oldest change first
+	private List<Books> books;
+
+	//isbns deleted since the watermark. A book deleted and created again shows up in both lists, the later timestamp wins
+	private List<BookTombstone> deleted;
+
+	//pass as ?since= next time
+	private String nextSince;
+
+	//true when the page was full, ask again with nextSince right away
+	private boolean hasMore;
+
+	public BooksDeltaDTO(List<Books> books, List<BookTombstone> deleted, String nextSince, boolean hasMore) {
+		super();
+		this.books = books;
+		this.deleted = deleted;
+		this.nextSince = nextSince;
+		this.hasMore = hasMore;
+	}
+
+	public List<Books> getBooks() {
+		return books;
+	}
+
+	public void setBooks(List<Books> books) {
+		this.books = books;
+	}
+
+	public List<BookTombstone> getDeleted() {
+		return deleted;
+	}
+
+	public void setDeleted(List<BookTombstone> deleted) {
+		this.deleted = deleted;
+	}
+
+	public String getNextSince() {
+		return nextSince;
+	}
+
+	public void setNextSince(String nextSince) {
+		this.nextSince = nextSince;
+	}
+
+	public boolean isHasMore() {
+		return hasMore;
+	}
+
+	public void setHasMore(boolean hasMore) {
+		this.hasMore = hasMore;
+	}
+
+}
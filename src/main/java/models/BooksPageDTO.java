@@ -0,0 +1,34 @@
+package models;
+
+import java.util.List;
+
+public class BooksPageDTO {
+
+	private List<Books> books;
+
+	//isbn to pass as ?after= to get the next page. null when this is the last page
+	private String nextCursor;
+
+	public BooksPageDTO(List<Books> books, String nextCursor) {
+		super();
+		this.books = books;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<Books> getBooks() {
+		return books;
+	}
+
+	public void setBooks(List<Books> books) {
+		this.books = books;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+}
@@ -0,0 +1,71 @@
+package repository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+//Bulkhead for the users, authorities and revoked_tokens tables: the JWT filter's lookups get their own small pool
+//on the same database, so a catalog scan or a bulk import holding every books connection cannot stall authentication.
+//Neither bean is a default candidate, so Boot still builds the books DataSource and JdbcTemplate, and everything
+//that does not ask for authDataSource / authJdbcTemplate by name keeps using those.
+@Configuration
+public class AuthDataSourceConfig {
+
+	@Bean(defaultCandidate = false)
+	DataSource authDataSource(DataSourceProperties properties, Environment environment,
+			@Value("${datasource.auth.maximumPoolSize:4}") int maximumPoolSize,
+			@Value("${datasource.auth.connectionTimeoutMillis:500}") long connectionTimeoutMillis,
+			@Value("${datasource.replicas.urls:}") String[] replicaUrls,
+			@Value("${datasource.replicas.stickySeconds:5}") long stickySeconds,
+			@Value("${datasource.replicas.maxClients:100000}") long maxClients) {
+		HikariDataSource primary = DataSourcePools.primary(properties, environment, "auth");
+		size(primary, maximumPoolSize, connectionTimeoutMillis);
+		if (replicaUrls.length == 0) {
+			return primary;
+		}
+		
+		//with replicas the lookups follow the same routing as the books queries, on pools of their own
+		List<HikariDataSource> replicas = DataSourcePools.replicas(properties, environment, replicaUrls, "auth");
+		replicas.forEach(replica -> size(replica, maximumPoolSize, connectionTimeoutMillis));
+		return ReplicaRoutingConfig.routed("auth", primary, replicas, stickySeconds, maxClients);
+	}
+
+	private static void size(HikariDataSource pool, int maximumPoolSize, long connectionTimeoutMillis) {
+		pool.setMaximumPoolSize(maximumPoolSize);
+		pool.setConnectionTimeout(connectionTimeoutMillis);
+	}
+
+	@Bean(defaultCandidate = false)
+	JdbcTemplate authJdbcTemplate(@Qualifier("authDataSource") DataSource authDataSource) {
+		return new JdbcTemplate(authDataSource);
+	}
+
+	@Bean
+	MeterBinder authDataSourceMetrics(@Qualifier("authDataSource") DataSource authDataSource) {
+		return registry -> {
+			try {
+				if (authDataSource.isWrapperFor(ReplicaRoutingDataSource.class)) {
+					authDataSource.unwrap(ReplicaRoutingDataSource.class).bindTo(registry);
+				}
+				DataSourcePools.bindMetrics(authDataSource, registry);
+			}
+			catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+
+}
@@ -1,9 +1,32 @@
 package repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import models.Books;
 
-public interface BookRepository extends JpaRepository<Books, String>{
+public interface BookRepository extends JpaRepository<Books, String>, BookRepositoryCustom, CatalogVersionedSave<Books> {
+
+	//Keyset pagination: the next page starts right after the last isbn of the previous one, so it is an index range scan instead of an OFFSET
+	@Transactional(readOnly = true)
+	List<Books> findByIsbnGreaterThanOrderByIsbnAsc(String isbn, Limit limit);
+	
+	//Unlike existsById not read-only, so it runs on the primary: a replica may not have a book that was just written yet.
+	//Call it inside ReplicaRouting.readingPrimary, otherwise the routing takes it for a write
+	boolean existsByIsbn(String isbn);
+	
+	//Single UPDATE statement, null arguments leave the column as it is. Returns the number of rows changed (0 when the isbn does not exist)
+	default int updateFields(String isbn, String title, String author, Double price) {
+		return updateFieldsAt(isbn, title, author, price, System.currentTimeMillis());
+	}
+	
+	//Same as updateFields, but only touches the row while its version is one of the given ones (If-Match)
+	default int updateFieldsIfVersion(String isbn, Collection<Long> versions, String title, String author, Double price) {
+		return updateFieldsIfVersionAt(isbn, versions, title, author, price, System.currentTimeMillis());
+	}
 
 }
@@ -0,0 +1,57 @@
+package repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import models.BookSummaryDTO;
+import models.BookTombstone;
+import models.Books;
+
+public interface BookRepositoryCustom {
+
+	//Walks the whole books table through a forward-only JDBC cursor, handing each row to the action as it is read.
+	//Nothing is collected or attached to the persistence context, so memory stays flat no matter how big the table is.
+	void forEachBook(Consumer<Books> action);
+
+	//The version of the book_catalog row, read-only. Every write below bumps it in the same transaction, so it changes
+	//with every commit to the books table. A primary key lookup, instead of a pass over the rows
+	long catalogVersion();
+
+	//Inserts or updates all the given books with JDBC batches of batchSize statements, without going through the persistence context.
+	//Runs in the caller's transaction. When the same isbn shows up more than once the last one wins, like sequential saves would.
+	//Inserting an isbn that was deleted before removes its tombstone.
+	void upsertAll(List<Books> books, int batchSize);
+
+	//Single UPDATE statement, null arguments leave the column as it is, updatedAt is passed in. Returns the number of
+	//rows changed (0 when the isbn does not exist)
+	int updateFieldsAt(String isbn, String title, String author, Double price, long updatedAt);
+
+	//Same as updateFieldsAt, but only touches the row while its version is one of the given ones (If-Match)
+	int updateFieldsIfVersionAt(String isbn, Collection<Long> versions, String title, String author, Double price, long updatedAt);
+
+	//Books matching every filter that is not null, in the given order. Only the summary columns are selected and mapped
+	//straight from the result set, so nothing is hydrated into entities or kept in the persistence context.
+	List<BookSummaryDTO> findSummaries(String author, Double minPrice, Double maxPrice, BookSort sort, int limit, int offset);
+
+	//The current row, read on the primary and past the persistence context, for checking an If-Match before a write
+	Optional<Books> findCurrent(String isbn);
+
+	//DELETE plus a tombstone for GET /books?since=, in one transaction. Returns the number of rows removed
+	int deleteByIsbn(String isbn);
+
+	//Same as deleteByIsbn, but only while the row's version is one of the given ones (If-Match)
+	int deleteByIsbnIfVersion(String isbn, Collection<Long> versions);
+
+	//Books changed after the keyset (sinceMillis, afterIsbn) and no later than untilMillis, in (updatedAt, isbn) order.
+	//A null afterIsbn means everything changed after sinceMillis. Range scan of idx_books_updated_at
+	List<Books> findChangedSince(long sinceMillis, String afterIsbn, long untilMillis, int limit);
+
+	//Same keyset over the tombstones
+	List<BookTombstone> findDeletedSince(long sinceMillis, String afterIsbn, long untilMillis, int limit);
+
+	//Drops tombstones deleted before the given time, returns how many
+	int purgeTombstones(long beforeMillis);
+
+}
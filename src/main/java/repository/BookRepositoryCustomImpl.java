@@ -0,0 +1,271 @@
+package repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import models.BookSummaryDTO;
+import models.BookTombstone;
+import models.Books;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+	private static final String SELECT_ALL_BOOKS = "select isbn, author, title, price, version, updated_at from books order by isbn";
+	private static final String SELECT_BOOK = "select isbn, author, title, price, version, updated_at from books where isbn = ?";
+	private static final String SELECT_CATALOG_VERSION = "select version from book_catalog where id = 1";
+	//creates the row on the first write
+	static final String BUMP_CATALOG_VERSION = "insert into book_catalog (id, version) values (1, 1) on duplicate key update version = version + 1";
+	private static final String SELECT_EXISTING_ISBNS = "select isbn from books where isbn in (:isbns)";
+	private static final String INSERT_BOOK = "insert into books (isbn, author, title, price, version, updated_at) values (?, ?, ?, ?, 0, ?)";
+	private static final String SELECT_SUMMARIES = "select isbn, author, title, price from books";
+	private static final String UPDATE_BOOK = "update books set author = ?, title = ?, price = ?, version = version + 1, updated_at = ? where isbn = ?";
+	private static final String UPDATE_FIELDS = "update books set title = coalesce(:title, title), author = coalesce(:author, author), "
+			+ "price = coalesce(:price, price), version = version + 1, updated_at = :updatedAt where isbn = :isbn";
+	private static final String UPDATE_FIELDS_IF_VERSION = UPDATE_FIELDS + " and version in (:versions)";
+	private static final String DELETE_BOOK = "delete from books where isbn = :isbn";
+	private static final String DELETE_BOOK_IF_VERSION = "delete from books where isbn = :isbn and version in (:versions)";
+	private static final String UPSERT_TOMBSTONE = "insert into book_tombstones (isbn, deleted_at) values (?, ?) on duplicate key update deleted_at = ?";
+	//(t > since) or (t = since and isbn > after) spelled out, so both MySQL and H2 turn it into a range on the index
+	private static final String SELECT_CHANGED_SINCE = "select isbn, author, title, price, version, updated_at from books "
+			+ "where (updated_at > :since or (updated_at = :since and isbn > :after)) and updated_at <= :until "
+			+ "order by updated_at, isbn limit :limit";
+	private static final String SELECT_DELETED_SINCE = "select isbn, deleted_at from book_tombstones "
+			+ "where (deleted_at > :since or (deleted_at = :since and isbn > :after)) and deleted_at <= :until "
+			+ "order by deleted_at, isbn limit :limit";
+	//a deleted isbn that is created again: its tombstone must not reach clients alongside the new row
+	static final String DELETE_TOMBSTONE = "delete from book_tombstones where isbn = ?";
+	private static final String DELETE_TOMBSTONES = "delete from book_tombstones where isbn in (:isbns)";
+	private static final String PURGE_TOMBSTONES = "delete from book_tombstones where deleted_at < ?";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final JdbcTemplate streamingJdbcTemplate;
+	private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+	//Integer.MIN_VALUE is what makes MySQL Connector/J stream rows one by one instead of buffering the whole result set
+	public BookRepositoryCustomImpl(DataSource dataSource, @Value("${books.stream.fetchSize:-2147483648}") int fetchSize) {
+		super();
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+		this.streamingJdbcTemplate.setFetchSize(fetchSize);
+		this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+	}
+
+	//read-only, so with replicas configured the scan runs on one of them
+	@Override
+	@Transactional(readOnly = true)
+	public void forEachBook(Consumer<Books> action) {
+		streamingJdbcTemplate.query(SELECT_ALL_BOOKS, rs -> {
+			action.accept(mapBook(rs));
+		});
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public long catalogVersion() {
+		return jdbcTemplate.queryForList(SELECT_CATALOG_VERSION, Long.class).stream().findFirst().orElse(0L);
+	}
+
+	//Always after the books rows, on every path: the catalog row is the last lock a write takes, so two writes never
+	//wait for each other's book while holding it. It does serialize the commits of book writes
+	private void bumpCatalogVersion() {
+		jdbcTemplate.update(BUMP_CATALOG_VERSION);
+	}
+
+	@Override
+	public void upsertAll(List<Books> books, int batchSize) {
+		if (books.isEmpty()) {
+			return;
+		}
+		Map<String, Books> byIsbn = new LinkedHashMap<>();
+		for (Books book : books) {
+			byIsbn.put(book.getIsbn(), book);
+		}
+		
+		//One lookup per batch instead of the SELECT that save() runs for every single assigned-id entity
+		Set<String> existing = new HashSet<>();
+		List<String> isbns = new ArrayList<>(byIsbn.keySet());
+		for (int from = 0; from < isbns.size(); from += batchSize) {
+			List<String> slice = isbns.subList(from, Math.min(from + batchSize, isbns.size()));
+			existing.addAll(namedJdbcTemplate.queryForList(SELECT_EXISTING_ISBNS, Map.of("isbns", slice), String.class));
+		}
+		
+		List<Books> inserts = new ArrayList<>();
+		List<Books> updates = new ArrayList<>();
+		for (Books book : byIsbn.values()) {
+			(existing.contains(book.getIsbn()) ? updates : inserts).add(book);
+		}
+		
+		long updatedAt = System.currentTimeMillis();
+		jdbcTemplate.batchUpdate(INSERT_BOOK, inserts, batchSize, (ps, book) -> {
+			ps.setString(1, book.getIsbn());
+			ps.setString(2, book.getAuthor());
+			ps.setString(3, book.getTitle());
+			ps.setDouble(4, book.getPrice());
+			ps.setLong(5, updatedAt);
+		});
+		List<String> inserted = inserts.stream().map(Books::getIsbn).toList();
+		for (int from = 0; from < inserted.size(); from += batchSize) {
+			namedJdbcTemplate.update(DELETE_TOMBSTONES, Map.of("isbns", inserted.subList(from, Math.min(from + batchSize, inserted.size()))));
+		}
+		jdbcTemplate.batchUpdate(UPDATE_BOOK, updates, batchSize, (ps, book) -> {
+			ps.setString(1, book.getAuthor());
+			ps.setString(2, book.getTitle());
+			ps.setDouble(3, book.getPrice());
+			ps.setLong(4, updatedAt);
+			ps.setString(5, book.getIsbn());
+		});
+		bumpCatalogVersion();
+	}
+
+	@Override
+	@Transactional
+	public int updateFieldsAt(String isbn, String title, String author, Double price, long updatedAt) {
+		return updateFields(UPDATE_FIELDS, fields(isbn, title, author, price, updatedAt));
+	}
+
+	@Override
+	@Transactional
+	public int updateFieldsIfVersionAt(String isbn, Collection<Long> versions, String title, String author, Double price, long updatedAt) {
+		Map<String, Object> params = fields(isbn, title, author, price, updatedAt);
+		params.put("versions", versions);
+		return updateFields(UPDATE_FIELDS_IF_VERSION, params);
+	}
+
+	private int updateFields(String update, Map<String, Object> params) {
+		int updated = namedJdbcTemplate.update(update, params);
+		if (updated > 0) {
+			bumpCatalogVersion();
+		}
+		return updated;
+	}
+
+	private static Map<String, Object> fields(String isbn, String title, String author, Double price, long updatedAt) {
+		Map<String, Object> params = new HashMap<>();
+		params.put("isbn", isbn);
+		params.put("title", title);
+		params.put("author", author);
+		params.put("price", price);
+		params.put("updatedAt", updatedAt);
+		return params;
+	}
+
+	//Plain JDBC: a managed entity would stay in the request's persistence context and hide the bulk UPDATE that follows
+	//from the BookChangeEvent listeners reading the book again
+	@Override
+	public Optional<Books> findCurrent(String isbn) {
+		return ReplicaRouting.readingPrimary(
+				() -> jdbcTemplate.query(SELECT_BOOK, (rs, rowNum) -> mapBook(rs), isbn).stream().findFirst());
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<BookSummaryDTO> findSummaries(String author, Double minPrice, Double maxPrice, BookSort sort, int limit, int offset) {
+		//only the filters that are set end up in the WHERE clause, so MySQL can pick the matching composite index
+		List<String> conditions = new ArrayList<>();
+		Map<String, Object> params = new HashMap<>();
+		if (author != null) {
+			conditions.add("author = :author");
+			params.put("author", author);
+		}
+		if (minPrice != null) {
+			conditions.add("price >= :minPrice");
+			params.put("minPrice", minPrice);
+		}
+		if (maxPrice != null) {
+			conditions.add("price <= :maxPrice");
+			params.put("maxPrice", maxPrice);
+		}
+		params.put("limit", limit);
+		params.put("offset", offset);
+		
+		StringBuilder sql = new StringBuilder(SELECT_SUMMARIES);
+		if (!conditions.isEmpty()) {
+			sql.append(" where ").append(String.join(" and ", conditions));
+		}
+		sql.append(" order by ").append(sort.getOrderBy()).append(" limit :limit offset :offset");
+		
+		return namedJdbcTemplate.query(sql.toString(), params, (rs, rowNum) -> new BookSummaryDTO(
+				rs.getString("isbn"), rs.getString("author"), rs.getString("title"), rs.getDouble("price")));
+	}
+
+	@Override
+	@Transactional
+	public int deleteByIsbn(String isbn) {
+		return deleteWithTombstone(isbn, DELETE_BOOK, Map.of("isbn", isbn));
+	}
+
+	@Override
+	@Transactional
+	public int deleteByIsbnIfVersion(String isbn, Collection<Long> versions) {
+		return deleteWithTombstone(isbn, DELETE_BOOK_IF_VERSION, Map.of("isbn", isbn, "versions", versions));
+	}
+
+	private int deleteWithTombstone(String isbn, String delete, Map<String, ?> params) {
+		int deleted = namedJdbcTemplate.update(delete, params);
+		if (deleted > 0) {
+			long deletedAt = System.currentTimeMillis();
+			jdbcTemplate.update(UPSERT_TOMBSTONE, isbn, deletedAt, deletedAt);
+			bumpCatalogVersion();
+		}
+		return deleted;
+	}
+
+	//On the primary: a lagging replica would hand out a watermark past rows it has not seen yet, and the client would
+	//skip them for good. Only a read though, so the client does not get pinned to the primary as if it had written
+	@Override
+	public List<Books> findChangedSince(long sinceMillis, String afterIsbn, long untilMillis, int limit) {
+		return ReplicaRouting.readingPrimary(() -> namedJdbcTemplate.query(SELECT_CHANGED_SINCE,
+				keyset(sinceMillis, afterIsbn, untilMillis, limit), (rs, rowNum) -> mapBook(rs)));
+	}
+
+	@Override
+	public List<BookTombstone> findDeletedSince(long sinceMillis, String afterIsbn, long untilMillis, int limit) {
+		return ReplicaRouting.readingPrimary(() -> namedJdbcTemplate.query(SELECT_DELETED_SINCE,
+				keyset(sinceMillis, afterIsbn, untilMillis, limit),
+				(rs, rowNum) -> new BookTombstone(rs.getString("isbn"), rs.getLong("deleted_at"))));
+	}
+
+	//Without an isbn the keyset starts at the first row after sinceMillis: t >= since + 1 and any isbn
+	private static Map<String, Object> keyset(long sinceMillis, String afterIsbn, long untilMillis, int limit) {
+		Map<String, Object> params = new HashMap<>();
+		params.put("since", afterIsbn == null ? sinceMillis + 1 : sinceMillis);
+		params.put("after", afterIsbn == null ? "" : afterIsbn);
+		params.put("until", untilMillis);
+		params.put("limit", limit);
+		return params;
+	}
+
+	@Override
+	@Transactional
+	public int purgeTombstones(long beforeMillis) {
+		return jdbcTemplate.update(PURGE_TOMBSTONES, beforeMillis);
+	}
+
+	static Books mapBook(ResultSet rs) throws SQLException {
+		Books book = new Books();
+		book.setIsbn(rs.getString("isbn"));
+		book.setAuthor(rs.getString("author"));
+		book.setTitle(rs.getString("title"));
+		book.setPrice(rs.getDouble("price"));
+		book.setVersion(rs.getLong("version"));
+		book.setUpdatedAt(rs.getLong("updated_at"));
+		return book;
+	}
+
+}
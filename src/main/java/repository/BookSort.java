@@ -0,0 +1,39 @@
+package repository;
+
+//Orders accepted by GET /books/filter. Every one ends on isbn so offsets are stable between pages.
+//With an author filter the (author, price) and (author, title) indexes already return rows in these orders
+public enum BookSort {
+
+	ISBN("isbn", "isbn"),
+	PRICE("price", "price, isbn"),
+	PRICE_DESC("-price", "price desc, isbn desc"),
+	TITLE("title", "title, isbn"),
+	TITLE_DESC("-title", "title desc, isbn desc");
+
+	private final String param;
+	private final String orderBy;
+
+	BookSort(String param, String orderBy) {
+		this.param = param;
+		this.orderBy = orderBy;
+	}
+
+	public String getParam() {
+		return param;
+	}
+
+	String getOrderBy() {
+		return orderBy;
+	}
+
+	//null when the value is not one of the supported sorts
+	public static BookSort fromParam(String param) {
+		for (BookSort sort : values()) {
+			if (sort.param.equals(param)) {
+				return sort;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,9 @@
+package repository;
+
+//Replaces the JPA save of BookRepository, so the catalog version moves with it. Generic like CrudRepository.save, so
+//the two are the same method and Spring Data calls this one
+public interface CatalogVersionedSave<T> {
+
+	<S extends T> S save(S entity);
+
+}
@@ -0,0 +1,45 @@
+package repository;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import models.Books;
+
+public class CatalogVersionedSaveImpl implements CatalogVersionedSave<Books> {
+
+	private final JdbcTemplate jdbcTemplate;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	public CatalogVersionedSaveImpl(DataSource dataSource) {
+		super();
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	//A new book (null version) is persisted, an existing one merged, like SimpleJpaRepository does. A new one also drops
+	//the tombstone an earlier delete of the same isbn left
+	@Override
+	@Transactional
+	public <S extends Books> S save(S book) {
+		S saved = book;
+		boolean created = book.getVersion() == null;
+		if (created) {
+			entityManager.persist(book);
+		}
+		else {
+			saved = entityManager.merge(book);
+		}
+		//the INSERT/UPDATE goes out now instead of at commit: the catalog row is the last lock every write takes
+		entityManager.flush();
+		if (created) {
+			jdbcTemplate.update(BookRepositoryCustomImpl.DELETE_TOMBSTONE, book.getIsbn());
+		}
+		jdbcTemplate.update(BookRepositoryCustomImpl.BUMP_CATALOG_VERSION);
+		return saved;
+	}
+
+}
@@ -0,0 +1,69 @@
+package repository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+//Builds the Hikari pools of ReplicaRoutingConfig and AuthDataSourceConfig. Every pool starts from spring.datasource.hikari.*
+//and is named, which is the pool tag of its hikaricp_* meters.
+final class DataSourcePools {
+
+	private DataSourcePools() {
+	}
+
+	static HikariDataSource primary(DataSourceProperties properties, Environment environment, String name) {
+		return pool(properties.initializeDataSourceBuilder().type(HikariDataSource.class), environment, name);
+	}
+
+	//One pool per datasource.replicas.urls entry, logging in as datasource.replicas.username / password (default: the primary's)
+	static List<HikariDataSource> replicas(DataSourceProperties properties, Environment environment, String[] urls, String name) {
+		List<HikariDataSource> replicas = new ArrayList<>();
+		for (String url : urls) {
+			replicas.add(pool(DataSourceBuilder.create().type(HikariDataSource.class)
+					.driverClassName(properties.determineDriverClassName())
+					.url(url.trim())
+					.username(environment.getProperty("datasource.replicas.username", properties.determineUsername()))
+					.password(environment.getProperty("datasource.replicas.password", properties.determinePassword())),
+					environment, name + "-replica-" + (replicas.size() + 1)));
+		}
+		return replicas;
+	}
+
+	private static HikariDataSource pool(DataSourceBuilder<HikariDataSource> builder, Environment environment, String name) {
+		HikariDataSource pool = builder.build();
+		Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+		pool.setPoolName(name);
+		return pool;
+	}
+
+	//hikaricp_* meters for the pools behind a DataSource that Boot does not find by itself:
+	//the replicas behind a routing DataSource and pools that are not default candidates
+	static void bindMetrics(DataSource dataSource, MeterRegistry registry) throws SQLException {
+		List<Object> pools = new ArrayList<>();
+		if (dataSource.isWrapperFor(ReplicaRoutingDataSource.class)) {
+			pools.addAll(dataSource.unwrap(ReplicaRoutingDataSource.class).getResolvedDataSources().values());
+		}
+		else if (dataSource.isWrapperFor(HikariDataSource.class)) {
+			pools.add(dataSource.unwrap(HikariDataSource.class));
+		}
+		for (Object pool : pools) {
+			if (pool instanceof HikariDataSource hikari && hikari.getMetricRegistry() == null && hikari.getMetricsTrackerFactory() == null) {
+				hikari.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+package repository;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//Routing state of the current thread for ReplicaRoutingDataSource. ReplicaRoutingFilter begins a Request for every HTTP
+//request; threads without one (startup, schedulers) read from a replica whenever their transaction is read-only.
+public final class ReplicaRouting {
+
+	private static final ThreadLocal<Request> REQUEST = new ThreadLocal<>();
+	private static final ThreadLocal<Boolean> READING = new ThreadLocal<>();
+	private static final ThreadLocal<Boolean> READING_PRIMARY = new ThreadLocal<>();
+
+	private ReplicaRouting() {
+	}
+
+	//primary pins the whole request to the primary. client tells clients apart for read-your-writes, it is asked on
+	//every read: the JWT filter's user lookup still gets the address, the reads after authentication the user
+	public static Request begin(boolean primary, Supplier<String> client) {
+		Request request = new Request(primary, client);
+		REQUEST.set(request);
+		return request;
+	}
+
+	public static void end() {
+		REQUEST.remove();
+	}
+
+	public static Request current() {
+		return REQUEST.get();
+	}
+
+	//Carries a request's routing over to a thread that works for it, e.g. the one writing a streamed body.
+	//Returns what the thread had before, to hand back to resume when done
+	public static Request resume(Request request) {
+		Request previous = REQUEST.get();
+		if (request == null) {
+			REQUEST.remove();
+		}
+		else {
+			REQUEST.set(request);
+		}
+		return previous;
+	}
+
+	//For reads without a read-only transaction around them, like the JdbcUserDetailsManager lookups
+	public static <T> T reading(Supplier<T> read) {
+		if (READING.get() != null) {
+			return read.get();
+		}
+		READING.set(Boolean.TRUE);
+		try {
+			return read.get();
+		}
+		finally {
+			READING.remove();
+		}
+	}
+
+	static boolean isReading() {
+		return READING.get() != null;
+	}
+
+	//For reads that must not see a lagging replica. They go to the primary like a write, but unlike a write they do not
+	//pin the request or its client to the primary
+	public static <T> T readingPrimary(Supplier<T> read) {
+		if (READING_PRIMARY.get() != null) {
+			return read.get();
+		}
+		READING_PRIMARY.set(Boolean.TRUE);
+		try {
+			return read.get();
+		}
+		finally {
+			READING_PRIMARY.remove();
+		}
+	}
+
+	static boolean isReadingPrimary() {
+		return READING_PRIMARY.get() != null;
+	}
+
+	public static final class Request {
+
+		private final Supplier<String> client;
+		//routing DataSource name -> the replica its first read went to, every later read of the request goes there too,
+		//so e.g. an ETag and the body it describes come from the same replica even when the replicas lag differently
+		private final Map<String, Object> replicas = new ConcurrentHashMap<>();
+		private volatile boolean primary;
+		//routing DataSource name + client already checked against that DataSource's recent writers. Per client, because
+		//the JWT filter's user lookup can run before authentication, as "ip:...", and the books read after it as "user:..."
+		private final Set<String> checked = ConcurrentHashMap.newKeySet();
+
+		private Request(boolean primary, Supplier<String> client) {
+			this.primary = primary;
+			this.client = client;
+		}
+
+		public boolean isPrimary() {
+			return primary;
+		}
+
+		String client() {
+			return client.get();
+		}
+
+		void stickToPrimary() {
+			primary = true;
+		}
+
+		Object replica(String dataSource, Function<String, Object> choose) {
+			return replicas.computeIfAbsent(dataSource, choose);
+		}
+
+		//true the first time only
+		boolean check(String dataSource, String client) {
+			return checked.add(dataSource + '\n' + client);
+		}
+
+	}
+
+}
@@ -0,0 +1,81 @@
+package repository;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+//Only with datasource.replicas.urls set. Replaces Boot's single books pool with a primary pool from spring.datasource.*
+//and one pool per replica, both tuned by spring.datasource.hikari.*, behind a ReplicaRoutingDataSource
+@Configuration
+@ConditionalOnProperty("datasource.replicas.urls")
+public class ReplicaRoutingConfig {
+
+	@Bean
+	DataSource dataSource(DataSourceProperties properties, Environment environment,
+			@Value("${datasource.replicas.urls}") String[] urls,
+			@Value("${datasource.replicas.stickySeconds:5}") long stickySeconds,
+			@Value("${datasource.replicas.maxClients:100000}") long maxClients) {
+		return routed("books", DataSourcePools.primary(properties, environment, "books"),
+				DataSourcePools.replicas(properties, environment, urls, "books"), stickySeconds, maxClients);
+	}
+
+	//A LazyConnectionDataSourceProxy in front, so the routing happens at the first statement of a transaction
+	static DataSource routed(String name, DataSource primary, List<? extends DataSource> replicas, long stickySeconds, long maxClients) {
+		return new RoutedDataSource(new ReplicaRoutingDataSource(name, primary, replicas, Duration.ofSeconds(stickySeconds), maxClients));
+	}
+
+	//The proxy has no close method of its own; with this one the bean's inferred destroy method shuts the pools down
+	static final class RoutedDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+		private final ReplicaRoutingDataSource routing;
+
+		private RoutedDataSource(ReplicaRoutingDataSource routing) {
+			super(routing);
+			this.routing = routing;
+		}
+
+		@Override
+		public void close() throws Exception {
+			routing.close();
+		}
+
+	}
+
+	//The routing counters, plus hikaricp_* for the replica pools; Boot only finds the primary one through the DataSource bean
+	@Bean
+	MeterBinder replicaRoutingMetrics(DataSource dataSource) {
+		return registry -> {
+			try {
+				dataSource.unwrap(ReplicaRoutingDataSource.class).bindTo(registry);
+				DataSourcePools.bindMetrics(dataSource, registry);
+			}
+			catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+
+	//Spring holds a JDBC connection for the whole EntityManager, which open-in-view keeps for the whole request.
+	//Taking one per transaction is what lets each transaction go where it belongs.
+	@Bean
+	HibernatePropertiesCustomizer releaseConnectionsAfterTransaction() {
+		return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+				PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+	}
+
+}
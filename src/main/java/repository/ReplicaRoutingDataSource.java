@@ -0,0 +1,146 @@
+package repository;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+//Hands out replica connections, round robin, to read-only transactions and ReplicaRouting.reading, primary connections
+//to everything else. ReplicaRouting.readingPrimary reads go to the primary without counting as writes. All reads of
+//one request go to the replica its first read got. A request that writes stays on the primary for the rest of it, and
+//its client for stickiness afterwards, so clients read their own writes while the replicas catch up. It has to sit
+//behind a LazyConnectionDataSourceProxy: that defers the choice to the first statement, when the transaction is
+//marked read-only.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements MeterBinder, AutoCloseable {
+
+	private static final String PRIMARY = "primary";
+
+	private final String name;
+	private final int replicaCount;
+	private final AtomicInteger next = new AtomicInteger();
+	//clients that wrote within the stickiness window
+	private final Cache<String, Boolean> recentWriters;
+
+	private final LongAdder primaryConnections = new LongAdder();
+	private final LongAdder replicaConnections = new LongAdder();
+	private final LongAdder stickyReads = new LongAdder();
+
+	//name tags the meters, there is one routing DataSource per pool group (books, auth)
+	public ReplicaRoutingDataSource(String name, DataSource primary, List<? extends DataSource> replicas, Duration stickiness, long maxClients) {
+		super();
+		if (replicas.isEmpty()) {
+			throw new IllegalArgumentException("At least one replica is needed");
+		}
+		this.name = name;
+		this.replicaCount = replicas.size();
+		this.recentWriters = Caffeine.newBuilder()
+				.maximumSize(maxClients)
+				.expireAfterWrite(stickiness)
+				.build();
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(PRIMARY, primary);
+		for (int i = 0; i < replicas.size(); i++) {
+			targets.put(i, replicas.get(i));
+		}
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		setLenientFallback(false);
+		afterPropertiesSet();
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		ReplicaRouting.Request request = ReplicaRouting.current();
+		if (ReplicaRouting.isReadingPrimary()) {
+			primaryConnections.increment();
+			return PRIMARY;
+		}
+		boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReplicaRouting.isReading();
+		if (!readOnly) {
+			primaryConnections.increment();
+			if (request != null) {
+				request.stickToPrimary();
+				recentWriters.put(request.client(), Boolean.TRUE);
+			}
+			return PRIMARY;
+		}
+		
+		if (request != null) {
+			if (!request.isPrimary()) {
+				String client = request.client();
+				if (request.check(name, client) && recentWriters.getIfPresent(client) != null) {
+					request.stickToPrimary();
+				}
+			}
+			if (request.isPrimary()) {
+				stickyReads.increment();
+				primaryConnections.increment();
+				return PRIMARY;
+			}
+		}
+		replicaConnections.increment();
+		if (request != null) {
+			return request.replica(name, key -> nextReplica());
+		}
+		return nextReplica();
+	}
+
+	private Object nextReplica() {
+		return Math.floorMod(next.getAndIncrement(), replicaCount);
+	}
+
+	public long primaryConnections() {
+		return primaryConnections.sum();
+	}
+
+	public long replicaConnections() {
+		return replicaConnections.sum();
+	}
+
+	public long stickyReads() {
+		return stickyReads.sum();
+	}
+
+	//The pools behind it are no beans, so they are closed here when the context closes
+	@Override
+	public void close() throws Exception {
+		for (DataSource target : getResolvedDataSources().values()) {
+			if (target instanceof AutoCloseable pool) {
+				pool.close();
+			}
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("db.routing.connections", this, ReplicaRoutingDataSource::primaryConnections)
+				.description("Connections handed out by the replica routing")
+				.tag("datasource", name)
+				.tag("target", PRIMARY)
+				.register(registry);
+		FunctionCounter.builder("db.routing.connections", this, ReplicaRoutingDataSource::replicaConnections)
+				.description("Connections handed out by the replica routing")
+				.tag("datasource", name)
+				.tag("target", "replica")
+				.register(registry);
+		FunctionCounter.builder("db.routing.sticky", this, ReplicaRoutingDataSource::stickyReads)
+				.description("Reads sent to the primary because the request or its client wrote just before")
+				.tag("datasource", name)
+				.register(registry);
+	}
+
+}
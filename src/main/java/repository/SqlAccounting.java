@@ -0,0 +1,42 @@
+package repository;
+
+import javax.sql.DataSource;
+
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.QueryCountHolder;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+//Counts the SQL statements and the JDBC time of the current thread, for every DataSource wrapped by wrap().
+//JPA, Spring Data, JdbcTemplate and JdbcUserDetailsManager all go through the DataSource, so nothing escapes it.
+//SqlAccountingFilter resets the counts when a request starts, so during a request they belong to that request.
+public final class SqlAccounting {
+
+	private SqlAccounting() {
+	}
+
+	static DataSource wrap(DataSource dataSource, String name) {
+		return ProxyDataSourceBuilder.create(name, dataSource).countQuery().build();
+	}
+
+	public static void reset() {
+		QueryCountHolder.clear();
+	}
+
+	//statements executed on this thread since the last reset. A JDBC batch counts once
+	public static long statements() {
+		return QueryCountHolder.getGrandTotal().getTotal();
+	}
+
+	public static long elapsedMillis() {
+		return QueryCountHolder.getGrandTotal().getTime();
+	}
+
+	//"2 statements (select=1, insert=1, update=0, delete=0, other=0) in 3 ms"
+	public static String describe() {
+		QueryCount count = QueryCountHolder.getGrandTotal();
+		return count.getTotal() + " statements (select=" + count.getSelect() + ", insert=" + count.getInsert()
+				+ ", update=" + count.getUpdate() + ", delete=" + count.getDelete() + ", other=" + count.getOther()
+				+ ") in " + count.getTime() + " ms";
+	}
+
+}
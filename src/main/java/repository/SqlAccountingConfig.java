@@ -0,0 +1,27 @@
+package repository;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SqlAccountingConfig {
+
+	//Static so it is registered before the DataSource is created. Pool metrics still work, the proxy unwraps to Hikari
+	@Bean
+	static BeanPostProcessor sqlAccountingDataSourcePostProcessor() {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+				if (bean instanceof DataSource dataSource) {
+					return SqlAccounting.wrap(dataSource, beanName);
+				}
+				return bean;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,161 @@
+package security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+//Runs encode/matches of the wrapped (BCrypt) encoder on a fixed number of threads with a bounded queue, so a login storm
+//burns at most that many cores and the rest stay free for /books. When the queue is full the call fails right away
+//with a PasswordHashingRejectedException instead of piling up request threads.
+public class BoundedPasswordEncoder implements PasswordEncoder, MeterBinder, AutoCloseable {
+
+	private final PasswordEncoder delegate;
+	private final ThreadPoolExecutor executor;
+	private final int threads;
+
+	private final LongAdder hashes = new LongAdder();
+	private final LongAdder hashNanos = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity) {
+		super();
+		this.delegate = delegate;
+		this.threads = threads;
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				task -> {
+					Thread thread = new Thread(task, "password-hashing-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return run(() -> delegate.encode(rawPassword));
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		return run(() -> delegate.matches(rawPassword, encodedPassword));
+	}
+
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		return delegate.upgradeEncoding(encodedPassword);
+	}
+
+	private <T> T run(Callable<T> hashing) {
+		long submitted = System.nanoTime();
+		Future<T> result;
+		try {
+			result = executor.submit(() -> {
+				long started = System.nanoTime();
+				waitNanos.add(started - submitted);
+				try {
+					return hashing.call();
+				}
+				finally {
+					hashNanos.add(System.nanoTime() - started);
+					hashes.increment();
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw new PasswordHashingRejectedException(retryAfterSeconds());
+		}
+
+		try {
+			return result.get();
+		}
+		catch (InterruptedException e) {
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+		}
+		catch (ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+		}
+	}
+
+	//Roughly how long the work already queued takes to drain, at least one second
+	public long retryAfterSeconds() {
+		double drainMillis = (executor.getQueue().size() + threads) * averageHashMillis() / threads;
+		return Math.max(1, (long) Math.ceil(drainMillis / 1000));
+	}
+
+	public int queueDepth() {
+		return executor.getQueue().size();
+	}
+
+	public int queueCapacity() {
+		return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+	}
+
+	public int activeThreads() {
+		return executor.getActiveCount();
+	}
+
+	public int threads() {
+		return threads;
+	}
+
+	public long hashes() {
+		return hashes.sum();
+	}
+
+	public long rejected() {
+		return rejected.sum();
+	}
+
+	public double averageHashMillis() {
+		long count = hashes.sum();
+		return count == 0 ? 0 : hashNanos.sum() / 1_000_000.0 / count;
+	}
+
+	public double averageWaitMillis() {
+		long count = hashes.sum();
+		return count == 0 ? 0 : waitNanos.sum() / 1_000_000.0 / count;
+	}
+
+	//Hash time is the BCrypt work itself, wait time is how long a call sat in the queue before a thread picked it up
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionTimer.builder("security.password.hash", this, BoundedPasswordEncoder::hashes, encoder -> encoder.hashNanos.sum(), TimeUnit.NANOSECONDS)
+				.description("BCrypt encode/matches on the hashing pool")
+				.register(registry);
+		FunctionTimer.builder("security.password.wait", this, BoundedPasswordEncoder::hashes, encoder -> encoder.waitNanos.sum(), TimeUnit.NANOSECONDS)
+				.description("Time hashing requests spent queued")
+				.register(registry);
+		Gauge.builder("security.password.queue.depth", this, BoundedPasswordEncoder::queueDepth).register(registry);
+		Gauge.builder("security.password.queue.capacity", this, BoundedPasswordEncoder::queueCapacity).register(registry);
+		Gauge.builder("security.password.active", this, BoundedPasswordEncoder::activeThreads).register(registry);
+		FunctionCounter.builder("security.password.rejected", this, BoundedPasswordEncoder::rejected)
+				.description("Hashing requests turned away with a 429 because the queue was full")
+				.register(registry);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+}
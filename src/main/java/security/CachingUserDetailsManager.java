@@ -0,0 +1,97 @@
+package security;
+
+import java.time.Duration;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.provisioning.UserDetailsManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import repository.ReplicaRouting;
+
+//Sits in front of the JdbcUserDetailsManager so the JWT filter chain does not go to the database for the same user on every request.
+//Every write goes to the delegate first and then drops the cached entry, so this node never serves a user it changed itself.
+//Changes made by other nodes are picked up once the TTL runs out. Lookups may be served by a read replica.
+public class CachingUserDetailsManager implements UserDetailsManager, MeterBinder {
+	
+	private final UserDetailsManager delegate;
+	private final Cache<String, UserDetails> users;
+
+	public CachingUserDetailsManager(UserDetailsManager delegate, long maxSize, Duration ttl) {
+		super();
+		this.delegate = delegate;
+		this.users = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttl)
+				.recordStats()
+				.build();
+	}
+
+	@Override
+	public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+		UserDetails user = users.getIfPresent(username);
+		if (user == null) {
+			user = ReplicaRouting.reading(() -> delegate.loadUserByUsername(username));
+			users.put(username, user);
+		}
+		//Hand out a copy. The AuthenticationManager erases the password of the principal it returns,
+		//and that must not blank out the cached instance.
+		return User.withUserDetails(user).build();
+	}
+
+	@Override
+	public boolean userExists(String username) {
+		return users.getIfPresent(username) != null || ReplicaRouting.reading(() -> delegate.userExists(username));
+	}
+
+	@Override
+	public void createUser(UserDetails user) {
+		delegate.createUser(user);
+		users.invalidate(user.getUsername());
+	}
+
+	@Override
+	public void updateUser(UserDetails user) {
+		delegate.updateUser(user);
+		users.invalidate(user.getUsername());
+	}
+
+	@Override
+	public void deleteUser(String username) {
+		delegate.deleteUser(username);
+		users.invalidate(username);
+	}
+
+	//The delegate changes the password of whoever is in the SecurityContext, so that is the entry to drop
+	@Override
+	public void changePassword(String oldPassword, String newPassword) {
+		delegate.changePassword(oldPassword, newPassword);
+		Authentication current = SecurityContextHolder.getContext().getAuthentication();
+		if (current != null) {
+			users.invalidate(current.getName());
+		}
+		else {
+			users.invalidateAll();
+		}
+	}
+	
+	//Hit/miss counts, load counts and evictions since startup
+	public CacheStats stats() {
+		return users.stats();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, users, "users");
+	}
+
+}
@@ -1,7 +1,13 @@
 package security;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -10,6 +16,12 @@ import org.springframework.security.provisioning.UserDetailsManager;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.MeterRegistry;
+
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -21,11 +33,13 @@ public class JwtFilter extends OncePerRequestFilter{
 	
 	private final JwtUtil jwtUtil;
 	private final UserDetailsManager userDetailsManager;
+	private final MeterRegistry meterRegistry;
 	
-	public JwtFilter(JwtUtil jwtUtil, UserDetailsManager userDetailsManager) {
+	public JwtFilter(JwtUtil jwtUtil, UserDetailsManager userDetailsManager, MeterRegistry meterRegistry) {
 		super();
 		this.jwtUtil = jwtUtil;
 		this.userDetailsManager = userDetailsManager;
+		this.meterRegistry = meterRegistry;
 	}
 
 
@@ -46,22 +60,64 @@ public class JwtFilter extends OncePerRequestFilter{
 			filterChain.doFilter(request, response);
 			return;
 		}
+		//only the token work is timed, not the rest of the chain. The outcome tag tells why a token was not accepted
+		long started = System.nanoTime();
+		String outcome = "error";
+		try {
+			outcome = authenticate(token);
+		}
+		catch (ExpiredJwtException e) {
+			outcome = "expired";
+			throw e;
+		}
+		catch (SignatureException e) {
+			outcome = "bad_signature";
+			throw e;
+		}
+		catch (MalformedJwtException e) {
+			outcome = "malformed";
+			throw e;
+		}
+		catch (JwtException e) {
+			outcome = "invalid";
+			throw e;
+		}
+		catch (DataAccessResourceFailureException | TransientDataAccessResourceException e) {
+			//auth pool exhausted (or the database gone): answer right away instead of piling more requests onto it
+			outcome = "unavailable";
+			response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+			response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			response.getWriter().write("{\"error\":\"Authentication is temporarily unavailable, try again later\"}");
+			return;
+		}
+		finally {
+			meterRegistry.timer("jwt.filter", "outcome", outcome).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+		}
+		filterChain.doFilter(request, response);
+	}
+	
+	private String authenticate(String token) {
 		String username = jwtUtil.getUsernameFromToken(token);
-		
-		if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-			try {
-				UserDetails userDetails = userDetailsManager.loadUserByUsername(username);
-				if (jwtUtil.validateAccessToken(token, userDetails)){
-					UsernamePasswordAuthenticationToken authToken =new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-					
-					SecurityContextHolder.getContext().setAuthentication(authToken);
-				}
-			}
-			catch (UsernameNotFoundException e) {
-				throw new RuntimeException("Username given in token is invalid");
+		if (username == null) {
+			return "no_subject";
+		}
+		if (SecurityContextHolder.getContext().getAuthentication() != null) {
+			return "already_authenticated";
+		}
+		try {
+			UserDetails userDetails = userDetailsManager.loadUserByUsername(username);
+			if (jwtUtil.validateAccessToken(token, userDetails)){
+				UsernamePasswordAuthenticationToken authToken =new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+				
+				SecurityContextHolder.getContext().setAuthentication(authToken);
+				return "authenticated";
 			}
+			return "rejected";
+		}
+		catch (UsernameNotFoundException e) {
+			throw new RuntimeException("Username given in token is invalid");
 		}
-		filterChain.doFilter(request, response);
 	}
 
 }
@@ -1,7 +1,12 @@
 package security;
 
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.UUID;
 
 import javax.crypto.SecretKey;
 
@@ -10,95 +15,161 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.provisioning.UserDetailsManager;
 import org.springframework.stereotype.Component;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 import org.springframework.security.authentication.BadCredentialsException;
 
 @Component
-public class JwtUtil {
+public class JwtUtil implements MeterBinder {
 	
 
 
 	public JwtUtil(@Value("${jwt.secretKey}") String secretKey,
-			@Value("${jwt.expirationOffset}") int expirationOffset, @Value("${jwt.refreshOffset}") long refreshOffset, UserDetailsManager userDetailsManager) {
+			@Value("${jwt.expirationOffset}") int expirationOffset, @Value("${jwt.refreshOffset}") long refreshOffset, UserDetailsManager userDetailsManager,
+			@Value("${jwt.cache.maxSize:10000}") long cacheMaxSize, TokenRevocationStore revocations) {
 		super();
 		this.secretKey = secretKey;
 		this.expirationOffset = expirationOffset;
 		this.refreshOffset = refreshOffset;
 		this.userDetailsManager = userDetailsManager;
+		this.revocations = revocations;
+		
+		//The key and the parser are immutable and thread safe, so they are built once instead of on every call
+		this.signingKey = Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+		this.parser = Jwts.parser().verifyWith(signingKey).build();
+		
+		//Tokens whose signature we already checked. Each entry lives exactly as long as the token itself is valid
+		this.verifiedTokens = Caffeine.newBuilder()
+				.maximumSize(cacheMaxSize)
+				.expireAfter(Expiry.<String, Claims>creating((digest, claims) -> 
+					Duration.ofMillis(Math.max(0, claims.getExpiration().getTime() - System.currentTimeMillis()))))
+				.recordStats()
+				.build();
 	}
 
 	private final String secretKey;
 	private final int expirationOffset;
 	private final long refreshOffset;
 	private final UserDetailsManager userDetailsManager;
+	private final TokenRevocationStore revocations;
+	private final SecretKey signingKey;
+	private final JwtParser parser;
+	private final Cache<String, Claims> verifiedTokens;
+	
 	
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, verifiedTokens, "jwt.tokens");
+	}
 	
-	//Use this to convert your secret key to SHA256 
+	//Use this to get the SHA256 version of your secret key
 	public SecretKey convertKeyToSHA256() {
-		return Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+		return signingKey;
 		
 	}
 	
 	public String generateToken(UserDetails user) {
 		return Jwts.builder()
+			.id(UUID.randomUUID().toString())
 			.subject(user.getUsername())
 			.issuedAt(new Date())
 			.expiration(new Date(System.currentTimeMillis() + expirationOffset))
 			.claim("type", "access")
-			.signWith(convertKeyToSHA256()) 
+			.signWith(signingKey) 
 			.compact();
 	}
 	
 	public String generateRefreshToken(UserDetails user) {
 		return Jwts.builder()
+			.id(UUID.randomUUID().toString())
 			.subject(user.getUsername())
 			.issuedAt(new Date())
 			.expiration(new Date(System.currentTimeMillis() + refreshOffset))
 			.claim("type", "refresh")
-			.signWith(convertKeyToSHA256()) 
+			.signWith(signingKey) 
 			.compact();
 	}
 	
+	//Verifies the signature the first time a token is seen and serves the claims from the cache after that.
+	//Invalid tokens throw the usual JwtException and are never cached.
+	Claims parseClaims(String token) {
+		String digest = digest(token);
+		Claims claims = verifiedTokens.getIfPresent(digest);
+		if (claims == null) {
+			claims = parser.parseSignedClaims(token).getPayload();
+			if (claims.getExpiration() != null) {
+				verifiedTokens.put(digest, claims);
+			}
+		}
+		return claims;
+	}
+	
+	//The cache is keyed by a digest so raw bearer tokens are not kept around in memory
+	private static String digest(String token) {
+		try {
+			MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+	
+	//The subject of a token whose signature was verified before, null for one that was not. Never checks a signature,
+	//so it costs a digest and a cache lookup whatever the token holds
+	public String getVerifiedUsername(String token) {
+		Claims claims = verifiedTokens.getIfPresent(digest(token));
+		return claims == null ? null : claims.getSubject();
+	}
+	
 	public String getUsernameFromToken(String token) {
-		return Jwts.parser().verifyWith(convertKeyToSHA256()).build().parseSignedClaims(token).getPayload().getSubject();
+		return parseClaims(token).getSubject();
 		
 	}
 	
+	//Only a token or claims that do not check out are bad credentials. Database errors of the user and revocation
+	//lookups go up as they are, so JwtFilter can answer 503 instead of 401 while the auth pool is exhausted
 	public boolean validateAccessToken(String token, UserDetails userDetails) {
+	    Claims claims;
+	    String type;
 	    try {
-	        Claims claims = Jwts.parser()
-	                .verifyWith(convertKeyToSHA256())
-	                .build()
-	                .parseSignedClaims(token)
-	                .getPayload();
-
-	        String username = claims.getSubject();
-	        Date expiration = claims.getExpiration();
-	        String type = claims.get("type", String.class);
-	        return ("access".equals(type) && userDetailsManager.userExists(username) &&  !expiration.before(new Date()));
-	    } catch (Exception e) {
+	        claims = parseClaims(token);
+	        type = claims.get("type", String.class);
+	    } catch (JwtException | IllegalArgumentException e) {
 	        throw new BadCredentialsException("Token does not match Signature"); 
 	    }
+	    Date expiration = claims.getExpiration();
+	    return ("access".equals(type) && expiration != null && !expiration.before(new Date())
+	    		&& userDetailsManager.userExists(claims.getSubject()) && !revocations.isRevoked(claims.getId()));
 	}
 	
 	public boolean validateRefreshToken(String token) {
 	    try {
-	        Claims claims = Jwts.parser()
-	                .verifyWith(convertKeyToSHA256())
-	                .build()
-	                .parseSignedClaims(token)
-	                .getPayload();
+	        Claims claims = parseClaims(token);
 
 	        String type = claims.get("type", String.class);
-	        return ("refresh".equals(type) && !claims.getExpiration().before(new Date()));
+	        return ("refresh".equals(type) && !claims.getExpiration().before(new Date()) && !revocations.isRevoked(claims.getId()));
 	    } catch (Exception e) {
 	        return false; 
 	    }
 	}
 	
+	//Revokes an access or refresh token until it expires. Throws the usual JwtException for tokens that do not verify
+	public void revoke(String token) {
+		Claims claims = parseClaims(token);
+		revocations.revoke(claims.getId(), claims.getExpiration());
+	}
+	
 
 
 }
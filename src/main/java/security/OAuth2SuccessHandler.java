@@ -1,6 +1,7 @@
 package security;
 
 import java.io.IOException;
+import java.util.logging.Logger;
 
 import org.springframework.context.annotation.Lazy;
 import org.springframework.security.core.Authentication;
@@ -20,6 +21,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class OAuth2SuccessHandler implements AuthenticationSuccessHandler{
 	
 	private final AuthService authService;
+	private Logger logger =  Logger.getLogger(OAuth2SuccessHandler.class.getName());
 	
 	public OAuth2SuccessHandler(@Lazy AuthService authService) {
 		super();
@@ -30,7 +32,7 @@ public class OAuth2SuccessHandler implements AuthenticationSuccessHandler{
 	public void onAuthenticationSuccess(HttpServletRequest request, HttpServletResponse response,
 			Authentication authentication) throws IOException, ServletException {
 		
-		System.out.println("OAuth2 Authentication Done Succesfully");
+		logger.fine("OAuth2 Authentication Done Succesfully");
 		
 		OAuth2AuthenticationToken token = (OAuth2AuthenticationToken) authentication;
 		AuthResponseDTO authResponse = authService.handleOAuth2(token);
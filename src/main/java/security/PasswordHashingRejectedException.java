@@ -0,0 +1,19 @@
+package security;
+
+//Thrown by BoundedPasswordEncoder when its queue is full. AuthController turns it into a 429 with Retry-After
+public class PasswordHashingRejectedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterSeconds;
+
+	public PasswordHashingRejectedException(long retryAfterSeconds) {
+		super("Too many password hashing requests, retry in " + retryAfterSeconds + "s");
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+}
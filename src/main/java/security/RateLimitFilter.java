@@ -0,0 +1,88 @@
+package security;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+//Runs before JwtFilter, so a flood is turned away before any token, BCrypt or database work. Clients whose bearer
+//token JwtFilter already verified are limited per username, looked up in JwtUtil's cache without parsing the token.
+//Everyone else is limited per IP address, that includes the first request with a new token and every forged one.
+//Behind a proxy set server.forward-headers-strategy so the IP is the client's and not the proxy's.
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+	static final String AUTH = "auth";
+	static final String LISTING = "listing";
+	static final String DEFAULT = "default";
+
+	private final RateLimiter rateLimiter;
+	private final JwtUtil jwtUtil;
+
+	public RateLimitFilter(RateLimiter rateLimiter, JwtUtil jwtUtil) {
+		super();
+		this.rateLimiter = rateLimiter;
+		this.jwtUtil = jwtUtil;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String group = routeGroup(request);
+		RateLimiter.Decision decision = rateLimiter.acquire(group, client(request));
+		if (decision == null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		
+		RateLimiter.Limit limit = rateLimiter.limit(group);
+		response.setHeader("RateLimit-Policy", limit.getCapacity() + ";w=" + limit.getWindowSeconds());
+		response.setHeader("RateLimit-Limit", String.valueOf(limit.getCapacity()));
+		response.setHeader("RateLimit-Remaining", String.valueOf(decision.getRemaining()));
+		response.setHeader("RateLimit-Reset", String.valueOf(decision.getResetSeconds()));
+		if (!decision.isAllowed()) {
+			response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+			response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, decision.getRetryAfterSeconds())));
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			response.getWriter().write("{\"error\":\"Too many requests, try again later\"}");
+			return;
+		}
+		filterChain.doFilter(request, response);
+	}
+
+	//auth covers the BCrypt endpoints, listing the unpaged GET /books and GET /books/export that read the whole table
+	static String routeGroup(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		if (path.startsWith("/auth/") || path.startsWith("/oauth2/") || path.startsWith("/login/oauth2/")) {
+			return AUTH;
+		}
+		if ("GET".equals(request.getMethod()) && ("/books".equals(path) || "/books/".equals(path))
+				&& request.getParameter("after") == null && request.getParameter("limit") == null && request.getParameter("since") == null) {
+			return LISTING;
+		}
+		if ("GET".equals(request.getMethod()) && ("/books/export".equals(path) || "/books/export/".equals(path))) {
+			return LISTING;
+		}
+		return DEFAULT;
+	}
+
+	private String client(HttpServletRequest request) {
+		String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+		if (header != null && header.startsWith("Bearer ") && header.length() > 7) {
+			String username = jwtUtil.getVerifiedUsername(header.substring(7));
+			if (username != null) {
+				return "user:" + username;
+			}
+		}
+		return "ip:" + request.getRemoteAddr();
+	}
+
+}
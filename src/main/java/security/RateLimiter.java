@@ -0,0 +1,174 @@
+package security;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+//Token buckets per route group and client. Each bucket is a single AtomicLong updated with compare-and-set
+//(the GCRA form of a token bucket), so concurrent requests of one client never block each other.
+//Buckets live in a bounded cache and are dropped once idle long enough to have refilled, which loses nothing.
+public class RateLimiter implements MeterBinder {
+
+	private final Map<String, Limit> limits;
+	//one cache per group, keyed by client, so a lookup needs no concatenated key
+	private final Map<String, Cache<String, TokenBucket>> buckets;
+	private final Map<String, LongAdder> rejected;
+
+	//maxClients is per group
+	public RateLimiter(Map<String, Limit> limits, long maxClients) {
+		super();
+		this.limits = Map.copyOf(limits);
+		this.buckets = Map.copyOf(limits.entrySet().stream()
+				.collect(Collectors.toMap(Map.Entry::getKey, group -> Caffeine.newBuilder()
+						.maximumSize(maxClients)
+						.expireAfterAccess(Duration.ofNanos(Math.max(group.getValue().capacity * group.getValue().intervalNanos, TimeUnit.SECONDS.toNanos(1))))
+						.<String, TokenBucket>build())));
+		this.rejected = Map.copyOf(limits.keySet().stream()
+				.collect(Collectors.toMap(group -> group, group -> new LongAdder())));
+	}
+
+	//Takes one token of the client's bucket in the group. Unknown groups are not limited
+	public Decision acquire(String group, String client) {
+		Limit limit = limits.get(group);
+		if (limit == null) {
+			return null;
+		}
+		TokenBucket bucket = buckets.get(group).get(client, key -> new TokenBucket());
+		Decision decision = bucket.acquire(limit, System.nanoTime());
+		if (!decision.isAllowed()) {
+			rejected.get(group).increment();
+		}
+		return decision;
+	}
+
+	public Limit limit(String group) {
+		return limits.get(group);
+	}
+
+	public long clients() {
+		return buckets.values().stream().mapToLong(Cache::estimatedSize).sum();
+	}
+
+	public long rejected(String group) {
+		LongAdder count = rejected.get(group);
+		return count == null ? 0 : count.sum();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (String group : limits.keySet()) {
+			FunctionCounter.builder("http.ratelimit.rejected", this, limiter -> limiter.rejected(group))
+					.tag("group", group)
+					.description("Requests answered with a 429")
+					.register(registry);
+		}
+		Gauge.builder("http.ratelimit.clients", this, RateLimiter::clients)
+				.description("Client buckets currently kept in memory")
+				.register(registry);
+	}
+
+	//capacity requests at once, refilled at refillPerSecond
+	public static final class Limit {
+
+		private final long capacity;
+		private final double refillPerSecond;
+		private final long intervalNanos;
+
+		public Limit(long capacity, double refillPerSecond) {
+			if (capacity < 1 || refillPerSecond <= 0) {
+				throw new IllegalArgumentException("A rate limit needs a capacity of at least 1 and a positive refill rate");
+			}
+			this.capacity = capacity;
+			this.refillPerSecond = refillPerSecond;
+			this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond));
+		}
+
+		public long getCapacity() {
+			return capacity;
+		}
+
+		public double getRefillPerSecond() {
+			return refillPerSecond;
+		}
+
+		//seconds an empty bucket needs to fill up again
+		public long getWindowSeconds() {
+			return Math.max(1, (long) Math.ceil(capacity / refillPerSecond));
+		}
+
+	}
+
+	public static final class Decision {
+
+		private final boolean allowed;
+		private final long remaining;
+		private final long resetSeconds;
+		private final long retryAfterSeconds;
+
+		private Decision(boolean allowed, long remaining, long resetSeconds, long retryAfterSeconds) {
+			this.allowed = allowed;
+			this.remaining = remaining;
+			this.resetSeconds = resetSeconds;
+			this.retryAfterSeconds = retryAfterSeconds;
+		}
+
+		public boolean isAllowed() {
+			return allowed;
+		}
+
+		public long getRemaining() {
+			return remaining;
+		}
+
+		//seconds until the bucket is full again
+		public long getResetSeconds() {
+			return resetSeconds;
+		}
+
+		//seconds until the next request would be let through, 0 when this one was
+		public long getRetryAfterSeconds() {
+			return retryAfterSeconds;
+		}
+
+	}
+
+	//Holds the theoretical arrival time: when the bucket would be full again if no more requests came. A request is let
+	//through as long as that moves no further than capacity intervals ahead of now
+	static final class TokenBucket {
+
+		private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+		Decision acquire(Limit limit, long now) {
+			long burst = limit.capacity * limit.intervalNanos;
+			while (true) {
+				long current = fullAt.get();
+				long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+				long next = base + limit.intervalNanos;
+				long ahead = next - now;
+				if (ahead > burst) {
+					return new Decision(false, 0, seconds(current - now), seconds(ahead - burst));
+				}
+				if (fullAt.compareAndSet(current, next)) {
+					return new Decision(true, (burst - ahead) / limit.intervalNanos, seconds(ahead), 0);
+				}
+			}
+		}
+
+		private static long seconds(long nanos) {
+			return Math.max(0, (nanos + 999_999_999) / 1_000_000_000);
+		}
+
+	}
+
+}
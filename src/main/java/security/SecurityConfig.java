@@ -2,14 +2,19 @@ package security;
 
 import static org.springframework.security.config.Customizer.withDefaults;
 
+import java.time.Duration;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
 
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.config.ObjectPostProcessor;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -20,6 +25,7 @@ import org.springframework.security.provisioning.JdbcUserDetailsManager;
 import org.springframework.security.provisioning.UserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.header.HeaderWriterFilter;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 
 
@@ -35,7 +41,8 @@ public class SecurityConfig {
 	private final OAuth2SuccessHandler oAuthSuccessHandler;
 
 	
-	public SecurityConfig(DataSource dataSource, OAuth2SuccessHandler oAuthSuccessHandler) {
+	//the auth pool, see AuthDataSourceConfig
+	public SecurityConfig(@Qualifier("authDataSource") DataSource dataSource, OAuth2SuccessHandler oAuthSuccessHandler) {
 		super();
 		this.dataSource = dataSource;
 		this.oAuthSuccessHandler = oAuthSuccessHandler;
@@ -43,27 +50,63 @@ public class SecurityConfig {
 
 
 	@Bean
-	SecurityFilterChain defaultSecurityFilterChain(HttpSecurity http, JwtFilter jwtFilter) throws Exception {
+	SecurityFilterChain defaultSecurityFilterChain(HttpSecurity http, JwtFilter jwtFilter, RateLimitFilter rateLimitFilter) throws Exception {
 		http.csrf(csrf -> csrf.disable());
 		http.sessionManagement(sessionConfig -> sessionConfig.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
 		http.authorizeHttpRequests((requests) -> requests
-				.requestMatchers("/auth/signup", "/auth/login", "/auth/signup/", "/auth/login/", "/auth/refresh", "/auth/refresh/").permitAll()
+				.requestMatchers("/auth/signup", "/auth/login", "/auth/signup/", "/auth/login/", "/auth/refresh", "/auth/refresh/",
+						"/auth/revoke", "/auth/revoke/").permitAll()
+				//scraped by Prometheus without a token, only mapped on management.server.port, the app port answers 404
+				.requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
 				.anyRequest().authenticated());
 		http.httpBasic(withDefaults());
+		//The security headers are static, so they can go out before the chain runs. Written lazily they are added when
+		//the response commits, which for a streamed body (GET /books, /books/export) happens on the writer thread while
+		//the request thread may still be adding them on its way out
+		http.headers(headers -> headers.withObjectPostProcessor(new ObjectPostProcessor<HeaderWriterFilter>() {
+			@Override
+			public <O extends HeaderWriterFilter> O postProcess(O filter) {
+				filter.setShouldWriteHeadersEagerly(true);
+				return filter;
+			}
+		}));
 		http.addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
+		http.addFilterBefore(rateLimitFilter, JwtFilter.class);
 		http.oauth2Login(oAuth2 -> oAuth2.failureHandler((request, response, exception) -> {logger.info("OAuth2 Error");}).successHandler(oAuthSuccessHandler));
 		return http.build();
 	}
 
 	
+	//BCrypt runs on its own bounded pool, 0 threads means half of the available cores
 	@Bean
-	PasswordEncoder passEncoder() {
-		return new BCryptPasswordEncoder();
+	PasswordEncoder passEncoder(@Value("${security.passwordHashing.threads:0}") int threads,
+			@Value("${security.passwordHashing.queueCapacity:64}") int queueCapacity) {
+		if (threads <= 0) {
+			threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		}
+		return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), threads, queueCapacity);
 	}
 	
+	//Requests a client may burst per route group, and how many per second it gets back
 	@Bean
-	UserDetailsManager jdbcUserDetailsManager() {
-		return new JdbcUserDetailsManager(dataSource);
+	RateLimiter rateLimiter(@Value("${rateLimit.auth.capacity:10}") long authCapacity,
+			@Value("${rateLimit.auth.refillPerSecond:1}") double authRefill,
+			@Value("${rateLimit.listing.capacity:5}") long listingCapacity,
+			@Value("${rateLimit.listing.refillPerSecond:0.5}") double listingRefill,
+			@Value("${rateLimit.default.capacity:200}") long defaultCapacity,
+			@Value("${rateLimit.default.refillPerSecond:100}") double defaultRefill,
+			@Value("${rateLimit.maxClients:100000}") long maxClients) {
+		return new RateLimiter(Map.of(
+				RateLimitFilter.AUTH, new RateLimiter.Limit(authCapacity, authRefill),
+				RateLimitFilter.LISTING, new RateLimiter.Limit(listingCapacity, listingRefill),
+				RateLimitFilter.DEFAULT, new RateLimiter.Limit(defaultCapacity, defaultRefill)), maxClients);
+	}
+	
+	//The JDBC manager wrapped in a cache, so JwtFilter and JwtUtil do not hit the users table on every request
+	@Bean
+	UserDetailsManager jdbcUserDetailsManager(@Value("${security.userCache.maxSize:10000}") long maxSize,
+			@Value("${security.userCache.ttlSeconds:60}") long ttlSeconds) {
+		return new CachingUserDetailsManager(new JdbcUserDetailsManager(dataSource), maxSize, Duration.ofSeconds(ttlSeconds));
 	}
 	
 	
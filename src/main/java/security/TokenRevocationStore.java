@@ -0,0 +1,259 @@
+package security;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import repository.ReplicaRouting;
+
+//Revoked token ids (the jti claim) are kept in the revoked_tokens table until the token would have expired anyway.
+//Checks never touch the database for a token that was not revoked: a Bloom filter over every revoked id answers those,
+//ids revoked through this instance sit in an exact set, and only Bloom false positives go to the database.
+//Revocations made by other instances are picked up by a poll for the rows revoked since the last one, every few
+//seconds. The filter is rebuilt from the table on every compaction, which drops the expired ids.
+@Component
+public class TokenRevocationStore implements SmartInitializingSingleton, MeterBinder, AutoCloseable {
+
+	private static final String INSERT = "insert into revoked_tokens (jti, expires_at, revoked_at) values (?, ?, ?)";
+	private static final String SELECT_EXPIRY = "select expires_at from revoked_tokens where jti = ? and expires_at > ?";
+	private static final String SELECT_LIVE = "select jti from revoked_tokens where expires_at > ?";
+	private static final String SELECT_REVOKED_SINCE = "select jti, expires_at, revoked_at from revoked_tokens where revoked_at > ? and expires_at > ?";
+	private static final String DELETE_EXPIRED = "delete from revoked_tokens where expires_at <= ?";
+
+	private static final long POLL_OVERLAP_MILLIS = 30_000;
+
+	private final JdbcTemplate jdbcTemplate;
+	private final long expectedEntries;
+	private final double falsePositiveRate;
+	private final long compactionIntervalSeconds;
+	private final long pollIntervalSeconds;
+	private ScheduledExecutorService compactor;
+	private Logger logger = Logger.getLogger(TokenRevocationStore.class.getName());
+
+	//revocations and rebuilds are rare, the lock keeps a revocation from slipping past a filter that is being rebuilt
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private volatile BloomFilter filter;
+	//jti -> expiry in epoch millis, for ids revoked here or confirmed by the database
+	private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+	//Bloom false positives the database already said no to, until the next rebuild
+	private final Cache<String, Boolean> notRevoked;
+	//newest revoked_at seen, polls ask for the rows after it less POLL_OVERLAP_MILLIS
+	private volatile long revokedSeen;
+
+	private final LongAdder filterNegatives = new LongAdder();
+	private final LongAdder exactHits = new LongAdder();
+	private final LongAdder databaseLookups = new LongAdder();
+
+	public TokenRevocationStore(@Qualifier("authJdbcTemplate") JdbcTemplate jdbcTemplate,
+			@Value("${security.revocation.expectedEntries:10000}") long expectedEntries,
+			@Value("${security.revocation.falsePositiveRate:0.01}") double falsePositiveRate,
+			@Value("${security.revocation.compactionIntervalSeconds:600}") long compactionIntervalSeconds,
+			@Value("${security.revocation.pollIntervalSeconds:5}") long pollIntervalSeconds) {
+		super();
+		this.jdbcTemplate = jdbcTemplate;
+		this.expectedEntries = expectedEntries;
+		this.falsePositiveRate = falsePositiveRate;
+		this.compactionIntervalSeconds = compactionIntervalSeconds;
+		this.pollIntervalSeconds = pollIntervalSeconds;
+		this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+		this.notRevoked = Caffeine.newBuilder()
+				.maximumSize(10_000)
+				.expireAfterWrite(Duration.ofSeconds(Math.max(1, compactionIntervalSeconds)))
+				.build();
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		compact();
+		if (compactionIntervalSeconds > 0 || pollIntervalSeconds > 0) {
+			compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "token-revocation-compaction");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		if (compactionIntervalSeconds > 0) {
+			compactor.scheduleWithFixedDelay(this::compactQuietly, compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+		}
+		if (pollIntervalSeconds > 0) {
+			compactor.scheduleWithFixedDelay(this::pollQuietly, pollIntervalSeconds, pollIntervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	//Tokens without a jti were issued before revocation existed and cannot be revoked
+	public boolean isRevoked(String jti) {
+		if (jti == null) {
+			return false;
+		}
+		if (!filter.mightContain(jti)) {
+			filterNegatives.increment();
+			return false;
+		}
+		Long expiresAt = revoked.get(jti);
+		if (expiresAt != null) {
+			exactHits.increment();
+			return expiresAt > System.currentTimeMillis();
+		}
+		if (notRevoked.getIfPresent(jti) != null) {
+			return false;
+		}
+		databaseLookups.increment();
+		long now = System.currentTimeMillis();
+		//a replica may not have a revocation made a moment ago on another instance yet
+		List<Timestamp> expiry = ReplicaRouting.readingPrimary(
+				() -> jdbcTemplate.queryForList(SELECT_EXPIRY, Timestamp.class, jti, new Timestamp(now)));
+		if (!expiry.isEmpty()) {
+			//remembered until the token itself expires, an earlier cut-off would let the revoked token through again
+			revoked.putIfAbsent(jti, expiry.getFirst().getTime());
+			return true;
+		}
+		notRevoked.put(jti, Boolean.TRUE);
+		return false;
+	}
+
+	public void revoke(String jti, Date expiration) {
+		if (jti == null || expiration == null || expiration.getTime() <= System.currentTimeMillis()) {
+			return;
+		}
+		writeLock.lock();
+		try {
+			try {
+				jdbcTemplate.update(INSERT, jti, new Timestamp(expiration.getTime()), new Timestamp(System.currentTimeMillis()));
+			}
+			catch (DuplicateKeyException e) {
+				//revoked twice, the first row already covers it
+			}
+			revoked.put(jti, expiration.getTime());
+			filter.put(jti);
+			notRevoked.invalidate(jti);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	//Deletes expired rows and rebuilds the filter from what is left, sized for at least twice the live entries
+	public void compact() {
+		writeLock.lock();
+		try {
+			Timestamp now = new Timestamp(System.currentTimeMillis());
+			revokedSeen = Math.max(revokedSeen, now.getTime());
+			int deleted = jdbcTemplate.update(DELETE_EXPIRED, now);
+			List<String> live = jdbcTemplate.queryForList(SELECT_LIVE, String.class, now);
+			BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, 2L * live.size()), falsePositiveRate);
+			live.forEach(rebuilt::put);
+			revoked.values().removeIf(expiresAt -> expiresAt <= now.getTime());
+			filter = rebuilt;
+			notRevoked.invalidateAll();
+			logger.fine("Token revocations compacted, " + deleted + " expired and " + live.size() + " live entries");
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	//Adds the rows revoked since the last poll, on any instance. The overlap covers a revocation that commits after a
+	//later one was already seen and clocks of other instances that are a little behind; ids seen twice are harmless
+	public int poll() {
+		long now = System.currentTimeMillis();
+		List<Map<String, Object>> rows = ReplicaRouting.readingPrimary(() -> jdbcTemplate.queryForList(SELECT_REVOKED_SINCE,
+				new Timestamp(revokedSeen - POLL_OVERLAP_MILLIS), new Timestamp(now)));
+		if (rows.isEmpty()) {
+			return 0;
+		}
+		writeLock.lock();
+		try {
+			long newest = revokedSeen;
+			for (Map<String, Object> row : rows) {
+				String jti = (String) row.get("jti");
+				revoked.putIfAbsent(jti, ((Timestamp) row.get("expires_at")).getTime());
+				filter.put(jti);
+				notRevoked.invalidate(jti);
+				newest = Math.max(newest, ((Timestamp) row.get("revoked_at")).getTime());
+			}
+			revokedSeen = newest;
+		}
+		finally {
+			writeLock.unlock();
+		}
+		return rows.size();
+	}
+
+	private void pollQuietly() {
+		try {
+			poll();
+		}
+		catch (RuntimeException e) {
+			//the next poll asks from the same point again
+			logger.warning("Token revocation poll failed: " + e);
+		}
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		}
+		catch (RuntimeException e) {
+			//a failed run keeps the current filter, the next one tries again
+			logger.warning("Token revocation compaction failed: " + e);
+		}
+	}
+
+	public long filterNegatives() {
+		return filterNegatives.sum();
+	}
+
+	public long exactHits() {
+		return exactHits.sum();
+	}
+
+	public long databaseLookups() {
+		return databaseLookups.sum();
+	}
+
+	public int knownRevocations() {
+		return revoked.size();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("security.revocation.checks", this, TokenRevocationStore::filterNegatives)
+				.tag("answered_by", "bloom_filter").register(registry);
+		FunctionCounter.builder("security.revocation.checks", this, TokenRevocationStore::exactHits)
+				.tag("answered_by", "exact_set").register(registry);
+		FunctionCounter.builder("security.revocation.checks", this, TokenRevocationStore::databaseLookups)
+				.tag("answered_by", "database").register(registry);
+		Gauge.builder("security.revocation.known", this, TokenRevocationStore::knownRevocations).register(registry);
+	}
+
+	@Override
+	public void close() {
+		if (compactor != null) {
+			compactor.shutdownNow();
+		}
+	}
+
+}
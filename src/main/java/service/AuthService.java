@@ -1,7 +1,11 @@
 package service;
 
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.User;
@@ -11,7 +15,9 @@ import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.security.provisioning.UserDetailsManager;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import security.JwtUtil;
+import security.PasswordHashingRejectedException;
 import security.RandomPassGen;
 import models.AuthResponseDTO;
 
@@ -21,17 +27,22 @@ public class AuthService {
 	private final AuthenticationManager authManager;
 	private final JwtUtil jwtUtil;
 	private final UserDetailsManager userDetailsManager;
+	private final MeterRegistry meterRegistry;
+	private Logger logger =  Logger.getLogger(AuthService.class.getName());
 	
-	public AuthService(AuthenticationManager authManager, JwtUtil jwtUtil, UserDetailsManager userDetailsManager) {
+	public AuthService(AuthenticationManager authManager, JwtUtil jwtUtil, UserDetailsManager userDetailsManager, MeterRegistry meterRegistry) {
 		super();
 		this.authManager = authManager;
 		this.jwtUtil = jwtUtil;
 		this.userDetailsManager = userDetailsManager;
+		this.meterRegistry = meterRegistry;
 	}
 	
 	
+	//Timed as auth.login, tagged with the outcome. Most of the time is the BCrypt check, see the security.password meters
 	public AuthResponseDTO login(UserDetails request){
-		
+		long started = System.nanoTime();
+		String outcome = "error";
 		try {
 			Authentication auth = authManager.authenticate(new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword()));
 		
@@ -39,16 +50,37 @@ public class AuthService {
 			String token = jwtUtil.generateToken(userDetails);
 			String refreshToken = jwtUtil.generateRefreshToken(userDetails);
 			
+			outcome = "success";
 			return new AuthResponseDTO(token, refreshToken);
 		}
-		catch (BadCredentialsException e) {throw new RuntimeException("Invalid credentials");}
+		catch (BadCredentialsException e) {
+			outcome = "bad_credentials";
+			throw new RuntimeException("Invalid credentials");
+		}
+		//for unknown usernames Spring still runs a dummy matches() and wraps whatever it throws
+		catch (InternalAuthenticationServiceException e) {
+			if (e.getCause() instanceof PasswordHashingRejectedException rejected) {
+				outcome = "rejected";
+				throw rejected;
+			}
+			throw e;
+		}
+		catch (PasswordHashingRejectedException e) {
+			outcome = "rejected";
+			throw e;
+		}
+		finally {
+			meterRegistry.timer("auth.login", "outcome", outcome).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+		}
 	}
 
 
 	public AuthResponseDTO handleOAuth2(OAuth2AuthenticationToken token) {
+		long started = System.nanoTime();
+		boolean created = false;
 		OAuth2User oAuthUser = token.getPrincipal();
 		String email_username = oAuthUser.getAttribute("email");
-		System.out.println(email_username);
+		logger.fine("OAuth2 login for " + email_username);
 	    if (!userDetailsManager.userExists(email_username)) {
 	    	String randomPassword = RandomPassGen.generateRandomPassword(30);
 
@@ -58,7 +90,8 @@ public class AuthService {
 	                .build();
 
 	        userDetailsManager.createUser(newUser);
-	        System.out.println("New OAuth2 user added: " + email_username);
+	        created = true;
+	        logger.info("New OAuth2 user added: " + email_username);
 	    }
 	    
 	    UserDetails user = userDetailsManager.loadUserByUsername(email_username);
@@ -66,9 +99,7 @@ public class AuthService {
 		String accessToken = jwtUtil.generateToken(user);
 		String refreshToken = jwtUtil.generateRefreshToken(user);
 		
-		System.out.println("accessToken: " + accessToken);
-		System.out.println("refreshToken: " + refreshToken); 
-		
+		meterRegistry.timer("auth.oauth2", "new_user", String.valueOf(created)).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
 		return new AuthResponseDTO(accessToken, refreshToken);
 	}
 }
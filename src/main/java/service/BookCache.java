@@ -0,0 +1,108 @@
+package service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import models.BookChangeEvent;
+import models.Books;
+import repository.BookRepository;
+import repository.ReplicaRouting;
+
+//In-process near cache for GET /books/{isbn}.
+//Concurrent misses on the same isbn wait for a single findById instead of each running their own, and unknown isbns
+//are remembered for a short while so repeated 404s do not reach the database either.
+//Entries are dropped as soon as a BookChangeEvent for their isbn comes in. Writes made by other nodes show up after the TTL.
+//Entries are loaded from the primary: a lagging replica would put the row from before the write back for the whole TTL
+//(or a new book's 404 for the negative TTL), for every client, the writer included. Only misses pay for that.
+//The cache holds futures so that no lock is held while the database is queried: a virtual thread blocking on JDBC inside
+//a synchronized map compute would pin its carrier thread.
+@Component
+public class BookCache implements MeterBinder {
+	
+	private final BookRepository bookrepo;
+	private final AsyncCache<String, Optional<Books>> books;
+
+	public BookCache(BookRepository bookrepo, @Value("${books.cache.maxSize:10000}") long maxSize,
+			@Value("${books.cache.ttlSeconds:300}") long ttlSeconds,
+			@Value("${books.cache.negativeTtlSeconds:10}") long negativeTtlSeconds) {
+		super();
+		this.bookrepo = bookrepo;
+		Duration ttl = Duration.ofSeconds(ttlSeconds);
+		Duration negativeTtl = Duration.ofSeconds(negativeTtlSeconds);
+		this.books = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfter(Expiry.<String, Optional<Books>>creating((isbn, book) -> book.isPresent() ? ttl : negativeTtl))
+				.recordStats()
+				.buildAsync();
+	}
+	
+	//The first caller for an isbn only puts an empty future into the cache and then runs findById on its own thread,
+	//outside of any lock. Everybody else asking for that isbn in the meantime waits on the same future
+	public Optional<Books> find(String isbn) {
+		CompletableFuture<Optional<Books>> created = new CompletableFuture<>();
+		CompletableFuture<Optional<Books>> result = books.get(isbn, (key, executor) -> created);
+		if (result == created) {
+			try {
+				created.complete(ReplicaRouting.readingPrimary(() -> bookrepo.findById(isbn)).map(BookCache::detachedCopy));
+			}
+			catch (RuntimeException e) {
+				//a failed future is dropped by the cache, so the next caller tries again
+				created.completeExceptionally(e);
+			}
+		}
+		try {
+			return result.join();
+		}
+		catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException cause ? cause : e;
+		}
+	}
+	
+	//Removes the entry right away, even when its load is still running. That load then completes a future nobody
+	//will find again, so a value read before the write committed cannot stick around
+	@EventListener
+	public void onBookChange(BookChangeEvent event) {
+		books.synchronous().invalidate(event.getIsbn());
+	}
+	
+	public CacheStats stats() {
+		return books.synchronous().stats();
+	}
+	
+	public long size() {
+		return books.synchronous().estimatedSize();
+	}
+	
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, books, "books");
+	}
+	
+	//The cached instance is shared by every request, so it must not be the one attached to somebody's persistence context
+	static Books detachedCopy(Books book) {
+		Books copy = new Books();
+		copy.setIsbn(book.getIsbn());
+		copy.setAuthor(book.getAuthor());
+		copy.setTitle(book.getTitle());
+		copy.setPrice(book.getPrice());
+		copy.setVersion(book.getVersion());
+		copy.setUpdatedAt(book.getUpdatedAt());
+		return copy;
+	}
+
+}
@@ -0,0 +1,244 @@
+package service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import models.BookChangeEvent;
+import models.BookUpdateDTO;
+
+//Every BookChangeEvent gets the next sequence number and goes into a fixed size ring buffer, serialized once.
+//Subscribers do not have queues of their own, each one only remembers the last sequence number it was sent and reads
+//on from the ring. That makes Last-Event-ID resumption free, and bounds memory: a subscriber that falls more than the
+//ring size behind (a slow reader, or a resume from too long ago) gets a resync event and is closed.
+//Sends block on the client's socket, so every subscriber is drained on a virtual thread of its own and a stalled
+//client never holds up a writer or another subscriber.
+@Component
+public class BookChangeFeed implements MeterBinder, AutoCloseable {
+
+	public static final String RESYNC = "resync";
+
+	private final ObjectMapper objectMapper;
+	private final int bufferSize;
+	private final int maxSubscribers;
+	private final long timeoutMillis;
+	private final AtomicReferenceArray<Change> ring;
+	//only writers take it, readers go by the volatile head
+	private final ReentrantLock appendLock = new ReentrantLock();
+	private volatile long head;
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+	private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+	private final LongAdder resyncs = new LongAdder();
+	private Logger logger = Logger.getLogger(BookChangeFeed.class.getName());
+
+	public BookChangeFeed(ObjectMapper objectMapper, @Value("${books.changes.bufferSize:4096}") int bufferSize,
+			@Value("${books.changes.maxSubscribers:1000}") int maxSubscribers,
+			@Value("${books.changes.timeoutSeconds:300}") long timeoutSeconds) {
+		super();
+		this.objectMapper = objectMapper;
+		this.bufferSize = bufferSize;
+		this.maxSubscribers = maxSubscribers;
+		this.timeoutMillis = timeoutSeconds * 1000;
+		this.ring = new AtomicReferenceArray<>(bufferSize);
+		//Sequence numbers start at the startup time in microseconds, so ids handed out before a restart
+		//are below the new ring and end in a resync instead of skipping changes
+		this.head = System.currentTimeMillis() * 1000;
+	}
+
+	@EventListener
+	public void onBookChange(BookChangeEvent event) {
+		String data = serialize(event);
+		appendLock.lock();
+		try {
+			long sequence = head + 1;
+			ring.set(slot(sequence), new Change(sequence, event.getType().name().toLowerCase(), data));
+			head = sequence;
+		}
+		finally {
+			appendLock.unlock();
+		}
+		subscribers.forEach(Subscriber::wake);
+	}
+
+	//Streams every change after lastEventId, or from now on when it is null. Null when there are too many subscribers
+	public SseEmitter subscribe(Long lastEventId) {
+		if (subscribers.size() >= maxSubscribers) {
+			return null;
+		}
+		SseEmitter emitter = new SseEmitter(timeoutMillis);
+		Subscriber subscriber = new Subscriber(emitter, lastEventId == null ? head : lastEventId);
+		emitter.onCompletion(() -> subscribers.remove(subscriber));
+		emitter.onTimeout(() -> subscribers.remove(subscriber));
+		emitter.onError(error -> subscribers.remove(subscriber));
+		subscribers.add(subscriber);
+		//sends out what was missed since lastEventId, or the resync when that is no longer in the ring
+		subscriber.wake();
+		return emitter;
+	}
+
+	public long head() {
+		return head;
+	}
+
+	public int subscribers() {
+		return subscribers.size();
+	}
+
+	public long resyncs() {
+		return resyncs.sum();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("books.changes.subscribers", this, BookChangeFeed::subscribers).register(registry);
+		FunctionCounter.builder("books.changes.resyncs", this, BookChangeFeed::resyncs)
+				.description("Subscribers closed with a resync because they fell out of the ring buffer")
+				.register(registry);
+	}
+
+	@Override
+	public void close() {
+		subscribers.forEach(subscriber -> subscriber.emitter.complete());
+		senders.shutdownNow();
+	}
+
+	private int slot(long sequence) {
+		return (int) Math.floorMod(sequence, (long) bufferSize);
+	}
+
+	//saved carries the book, updated only the fields that were set, deleted only the isbn
+	private String serialize(BookChangeEvent event) {
+		Object payload = switch (event.getType()) {
+			case SAVED -> BookCache.detachedCopy(event.getBook());
+			case UPDATED -> changedFields(event.getIsbn(), event.getChanges());
+			case DELETED -> Map.of("isbn", event.getIsbn());
+		};
+		try {
+			return objectMapper.writeValueAsString(payload);
+		}
+		catch (JsonProcessingException e) {
+			throw new IllegalStateException("Could not serialize change of " + event.getIsbn(), e);
+		}
+	}
+
+	private static Map<String, Object> changedFields(String isbn, BookUpdateDTO changes) {
+		Map<String, Object> fields = new LinkedHashMap<>();
+		fields.put("isbn", isbn);
+		if (changes.getTitle() != null) {
+			fields.put("title", changes.getTitle());
+		}
+		if (changes.getAuthor() != null) {
+			fields.put("author", changes.getAuthor());
+		}
+		if (changes.getPrice() != null) {
+			fields.put("price", changes.getPrice());
+		}
+		return fields;
+	}
+
+	private static final class Change {
+
+		private final long sequence;
+		private final String type;
+		private final String data;
+
+		private Change(long sequence, String type, String data) {
+			this.sequence = sequence;
+			this.type = type;
+			this.data = data;
+		}
+
+	}
+
+	private final class Subscriber {
+
+		private final SseEmitter emitter;
+		private final AtomicBoolean draining = new AtomicBoolean();
+		//last sequence number sent, only touched by the draining thread
+		private long cursor;
+
+		private Subscriber(SseEmitter emitter, long cursor) {
+			this.emitter = emitter;
+			this.cursor = cursor;
+		}
+
+		//at most one drain per subscriber runs at a time, a change arriving during a drain is picked up by its recheck
+		private void wake() {
+			if (draining.compareAndSet(false, true)) {
+				senders.execute(this::drain);
+			}
+		}
+
+		private void drain() {
+			try {
+				do {
+					if (!sendAvailable()) {
+						return;
+					}
+					draining.set(false);
+				} while (cursor < head && draining.compareAndSet(false, true));
+			}
+			catch (IOException | IllegalStateException e) {
+				//the client went away, onError/onCompletion unregister it
+				draining.set(false);
+				subscribers.remove(this);
+				emitter.completeWithError(e);
+			}
+		}
+
+		//false when the subscriber was closed with a resync
+		private boolean sendAvailable() throws IOException {
+			long available = head;
+			if (cursor > available || available - cursor > bufferSize) {
+				resync(available);
+				return false;
+			}
+			while (cursor < available) {
+				long next = cursor + 1;
+				Change change = ring.get(slot(next));
+				if (change == null || change.sequence != next) {
+					//overwritten while this subscriber was behind
+					resync(head);
+					return false;
+				}
+				emitter.send(SseEmitter.event().id(String.valueOf(next)).name(change.type).data(change.data, MediaType.APPLICATION_JSON));
+				cursor = next;
+			}
+			return true;
+		}
+
+		//The id moves the client's Last-Event-ID to the current head, so after reloading the catalog it reconnects from there
+		private void resync(long available) throws IOException {
+			resyncs.increment();
+			subscribers.remove(this);
+			logger.fine("Change feed subscriber at " + cursor + " resynced, head is " + available);
+			emitter.send(SseEmitter.event().id(String.valueOf(available)).name(RESYNC)
+					.data("{\"reason\":\"Changes after " + cursor + " are no longer buffered, reload GET /books\"}", MediaType.APPLICATION_JSON));
+			emitter.complete();
+		}
+
+	}
+
+}
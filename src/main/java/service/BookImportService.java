@@ -0,0 +1,199 @@
+package service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import models.BookChangeEvent;
+import models.BookImportErrorDTO;
+import models.BookImportReportDTO;
+import models.Books;
+import models.BooksDTO;
+import repository.BookRepository;
+
+//Bulk catalog loads. Records are read off the request body one at a time and validated like a single POST /books would be.
+//Valid ones are collected into chunks, and each chunk is written with JDBC batches in its own transaction,
+//so only one chunk is ever held in memory and a bad chunk does not roll back the ones before it.
+@Service
+public class BookImportService {
+	
+	static final int MAX_REPORTED_ERRORS = 1000;
+	
+	private final BookRepository bookrepo;
+	private final ApplicationEventPublisher eventPublisher;
+	private final ObjectMapper objectMapper;
+	private final CsvMapper csvMapper = new CsvMapper();
+	private final Validator validator;
+	private final TransactionTemplate transactionTemplate;
+	private final int batchSize;
+	private final int chunkSize;
+	private Logger logger = Logger.getLogger(BookImportService.class.getName());
+
+	public BookImportService(BookRepository bookrepo, ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper, Validator validator,
+			PlatformTransactionManager transactionManager, @Value("${books.import.batchSize:500}") int batchSize,
+			@Value("${books.import.chunkSize:5000}") int chunkSize) {
+		super();
+		this.bookrepo = bookrepo;
+		this.eventPublisher = eventPublisher;
+		this.objectMapper = objectMapper;
+		this.validator = validator;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+		this.chunkSize = chunkSize;
+	}
+	
+	//One BooksDTO JSON object per line. Blank lines are skipped
+	public BookImportReportDTO importNdjson(InputStream body) throws IOException {
+		ImportRun run = new ImportRun();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+		
+		String line;
+		long lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.isBlank()) {
+				continue;
+			}
+			try {
+				run.add(lineNumber, objectMapper.readValue(line, BooksDTO.class));
+			}
+			catch (JsonProcessingException e) {
+				run.reject(lineNumber, null, Map.of("record", "Malformed JSON: " + e.getOriginalMessage()));
+			}
+		}
+		return run.finish();
+	}
+	
+	//A header row naming the isbn, author, title and price columns (in any order), then one book per row
+	public BookImportReportDTO importCsv(InputStream body) throws IOException {
+		ImportRun run = new ImportRun();
+		CsvSchema schema = CsvSchema.emptySchema().withHeader();
+		
+		long row = 0;
+		try (MappingIterator<Map<String, String>> rows = csvMapper.readerForMapOf(String.class).with(schema).readValues(body)) {
+			while (rows.hasNextValue()) {
+				Map<String, String> columns = rows.nextValue();
+				row++;
+				String price = columns.get("price");
+				try {
+					double parsedPrice = price == null || price.isBlank() ? 0 : Double.parseDouble(price.trim());
+					run.add(row, new BooksDTO(columns.get("author"), columns.get("title"), parsedPrice, columns.get("isbn")));
+				}
+				catch (NumberFormatException e) {
+					run.reject(row, columns.get("isbn"), Map.of("price", "Price must be a number"));
+				}
+			}
+		}
+		catch (JsonProcessingException e) {
+			//Broken quoting and the like. Whatever was read up to here is still imported
+			run.reject(row + 1, null, Map.of("record", "Malformed CSV: " + e.getOriginalMessage()));
+		}
+		return run.finish();
+	}
+	
+	private class ImportRun {
+		
+		private final List<Books> chunk = new ArrayList<>();
+		private final List<Long> chunkRecords = new ArrayList<>();
+		private final List<BookImportErrorDTO> errors = new ArrayList<>();
+		private long received;
+		private long imported;
+		private long failed;
+		
+		void add(long record, BooksDTO bookDTO) {
+			received++;
+			Set<ConstraintViolation<BooksDTO>> violations = validator.validate(bookDTO);
+			if (!violations.isEmpty()) {
+				Map<String, String> map = new HashMap<>();
+				violations.forEach(violation -> map.put(violation.getPropertyPath().toString(), violation.getMessage()));
+				addError(record, bookDTO.getIsbn(), map);
+				return;
+			}
+			
+			Books book = new Books();
+			book.setIsbn(bookDTO.getIsbn());
+			book.setTitle(bookDTO.getTitle());
+			book.setAuthor(bookDTO.getAuthor());
+			book.setPrice(bookDTO.getPrice());
+			chunk.add(book);
+			chunkRecords.add(record);
+			
+			if (chunk.size() >= chunkSize) {
+				flush();
+			}
+		}
+		
+		void reject(long record, String isbn, Map<String, String> error) {
+			received++;
+			addError(record, isbn, error);
+		}
+		
+		BookImportReportDTO finish() {
+			flush();
+			return new BookImportReportDTO(received, imported, failed, errors);
+		}
+		
+		private void flush() {
+			if (chunk.isEmpty()) {
+				return;
+			}
+			try {
+				transactionTemplate.executeWithoutResult(status -> bookrepo.upsertAll(chunk, batchSize));
+			}
+			catch (RuntimeException e) {
+				//The whole chunk was rolled back, so every record in it failed. Not only DataAccessException: a pool
+				//timeout surfaces from the TransactionTemplate as a CannotCreateTransactionException
+				Map<String, String> error = Map.of("record", "Chunk rolled back: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+				for (int i = 0; i < chunk.size(); i++) {
+					addError(chunkRecords.get(i), chunk.get(i).getIsbn(), error);
+				}
+				chunk.clear();
+				chunkRecords.clear();
+				return;
+			}
+			imported += chunk.size();
+			for (Books book : chunk) {
+				try {
+					eventPublisher.publishEvent(BookChangeEvent.saved(book));
+				}
+				catch (RuntimeException e) {
+					//the book is committed, a failing listener does not change that
+					logger.warning("BookChangeEvent listener failed for " + book.getIsbn() + ": " + e);
+				}
+			}
+			chunk.clear();
+			chunkRecords.clear();
+		}
+		
+		private void addError(long record, String isbn, Map<String, String> error) {
+			failed++;
+			if (errors.size() < MAX_REPORTED_ERRORS) {
+				errors.add(new BookImportErrorDTO(record, isbn, error));
+			}
+		}
+	}
+
+}
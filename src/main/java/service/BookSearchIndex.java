@@ -0,0 +1,312 @@
+package service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import models.BookChangeEvent;
+import models.Books;
+import repository.BookRepository;
+
+//In-memory inverted index over title and author, so searching never runs a LIKE '%x%' scan on the database.
+//It is filled from the books table before the web server starts and follows every write through BookChangeEvents.
+//Queries match every term as a prefix, a book has to match all of them. Exact terms score higher than prefixes,
+//title matches higher than author matches. Terms shorter than minPrefixLength only match whole words, and a broad query
+//ranks its first maxCandidates matches (exact ones first) instead of every book, so no query walks the whole catalog.
+@Component
+public class BookSearchIndex implements SmartInitializingSingleton {
+
+	private static final int TITLE = 1;
+	private static final int AUTHOR = 2;
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final Comparator<ScoredBook> RANKING = Comparator.<ScoredBook>comparingDouble(hit -> -hit.score)
+			.thenComparing(hit -> hit.book.getTitle(), Comparator.nullsLast(Comparator.naturalOrder()))
+			.thenComparing(hit -> hit.book.getIsbn());
+	//far more deletes than can happen while the event of a write that raced one of them is on its way
+	private static final int REMEMBERED_DELETIONS = 10_000;
+
+	private final BookRepository bookrepo;
+	private final int minPrefixLength;
+	private final int maxCandidates;
+	//a plain lock rather than synchronized, so virtual threads waiting on a write do not pin their carrier
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	//the indexed books by isbn, needed to remove a book's old terms and to answer queries without a database round trip
+	private final Map<String, IndexedBook> books = new HashMap<>();
+	//term -> isbn -> fields the term occurs in (TITLE and/or AUTHOR bits)
+	private final NavigableMap<String, Map<String, Integer>> terms = new TreeMap<>();
+	//isbn -> number of the deletion, for the last REMEMBERED_DELETIONS. Kept even if the isbn comes back, a SAVED event
+	//of a write that raced the delete can still be on its way
+	private final Map<String, Long> deletions = new LinkedHashMap<>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > REMEMBERED_DELETIONS;
+		}
+	};
+	//written under the write lock
+	private volatile long deletionCount;
+
+	public BookSearchIndex(BookRepository bookrepo, @Value("${books.search.minPrefixLength:3}") int minPrefixLength,
+			@Value("${books.search.maxCandidates:1000}") int maxCandidates) {
+		super();
+		this.bookrepo = bookrepo;
+		this.minPrefixLength = minPrefixLength;
+		this.maxCandidates = maxCandidates;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		long deletionsSeen = deletionCount;
+		bookrepo.forEachBook(book -> put(book, deletionsSeen));
+	}
+
+	//A PATCH event only carries the changed fields and the new version is not known here, so the row is read again.
+	//A SAVED event for a recently deleted isbn may predate the delete or be a new book under the same isbn, versions
+	//start over so they cannot tell, the primary can
+	@EventListener
+	public void onBookChange(BookChangeEvent event) {
+		switch (event.getType()) {
+			case SAVED -> {
+				if (!put(event.getBook(), 0)) {
+					long deletionsSeen = deletionCount;
+					bookrepo.findCurrent(event.getIsbn()).ifPresent(book -> put(book, deletionsSeen));
+				}
+			}
+			case UPDATED -> {
+				long deletionsSeen = deletionCount;
+				bookrepo.findById(event.getIsbn()).ifPresentOrElse(book -> put(book, deletionsSeen), () -> remove(event.getIsbn()));
+			}
+			case DELETED -> remove(event.getIsbn());
+		}
+	}
+
+	public List<Books> search(String query, int limit) {
+		List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+		if (queryTerms.isEmpty()) {
+			return List.of();
+		}
+
+		//worst hit at the head, so the heap never holds more than limit books
+		PriorityQueue<ScoredBook> top = new PriorityQueue<>(limit, RANKING.reversed());
+		lock.readLock().lock();
+		try {
+			//the term with the fewest postings picks the candidates, the others are only checked against those
+			String driver = queryTerms.stream().min(Comparator.comparingLong(this::postingCount)).orElseThrow();
+			queryTerms.remove(driver);
+			candidates:
+			for (Map.Entry<String, Double> candidate : scoreTerm(driver).entrySet()) {
+				IndexedBook indexed = books.get(candidate.getKey());
+				double score = candidate.getValue();
+				for (String queryTerm : queryTerms) {
+					double termScore = indexed.score(queryTerm, isPrefix(queryTerm));
+					if (termScore == 0) {
+						//every query term has to match
+						continue candidates;
+					}
+					score += termScore;
+				}
+				ScoredBook hit = new ScoredBook(indexed.book, score);
+				if (top.size() < limit) {
+					top.add(hit);
+				}
+				else if (RANKING.compare(hit, top.peek()) < 0) {
+					top.poll();
+					top.add(hit);
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+
+		List<ScoredBook> ranked = new ArrayList<>(top);
+		ranked.sort(RANKING);
+		List<Books> hits = new ArrayList<>(ranked.size());
+		ranked.forEach(hit -> hits.add(hit.book));
+		return hits;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return books.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private boolean isPrefix(String queryTerm) {
+		return queryTerm.length() >= minPrefixLength;
+	}
+
+	//The indexed terms a query term matches, the term itself first
+	private NavigableMap<String, Map<String, Integer>> termsMatching(String queryTerm) {
+		return isPrefix(queryTerm) ? terms.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false)
+				: terms.subMap(queryTerm, true, queryTerm, true);
+	}
+
+	//Only compared against the other query terms, so counting stops once it is past the candidate cap
+	private long postingCount(String queryTerm) {
+		long count = 0;
+		for (Map<String, Integer> postings : termsMatching(queryTerm).values()) {
+			count += postings.size();
+			if (count >= maxCandidates) {
+				break;
+			}
+		}
+		return count;
+	}
+
+	//Best score of one query term per book, over the indexed terms it matches, for at most maxCandidates books.
+	//The exact term comes first in the range, so its better scoring books are the ones kept when the cap is hit
+	private Map<String, Double> scoreTerm(String queryTerm) {
+		Map<String, Double> termScores = new HashMap<>();
+		for (Map.Entry<String, Map<String, Integer>> term : termsMatching(queryTerm).entrySet()) {
+			boolean exact = term.getKey().equals(queryTerm);
+			for (Map.Entry<String, Integer> posting : term.getValue().entrySet()) {
+				if (termScores.size() >= maxCandidates && !termScores.containsKey(posting.getKey())) {
+					return termScores;
+				}
+				termScores.merge(posting.getKey(), score(posting.getValue(), exact), Math::max);
+			}
+		}
+		return termScores;
+	}
+
+	private static double score(int fields, boolean exact) {
+		double score = ((fields & TITLE) != 0 ? 2 : 0) + ((fields & AUTHOR) != 0 ? 1 : 0);
+		return exact ? score : score / 2;
+	}
+
+	//A book read after deletionsSeen deletions (0 when an event carried it) is not put back if its isbn was deleted
+	//since, the read may have come before that delete. Returns false only in that case
+	private boolean put(Books book, long deletionsSeen) {
+		Books copy = BookCache.detachedCopy(book);
+		lock.writeLock().lock();
+		try {
+			Long deletion = deletions.get(copy.getIsbn());
+			if (deletion != null && deletion > deletionsSeen) {
+				return false;
+			}
+			IndexedBook indexed = books.get(copy.getIsbn());
+			//events of concurrent writes can arrive out of order, an older version never replaces a newer one
+			Long indexedVersion = indexed == null ? null : indexed.book.getVersion();
+			if (indexedVersion != null && copy.getVersion() != null && indexedVersion > copy.getVersion()) {
+				return true;
+			}
+			if (indexed != null) {
+				unindex(indexed);
+			}
+			IndexedBook added = new IndexedBook(copy);
+			books.put(copy.getIsbn(), added);
+			added.fields.forEach((term, fields) -> terms.computeIfAbsent(term, key -> new HashMap<>()).put(copy.getIsbn(), fields));
+			return true;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void remove(String isbn) {
+		lock.writeLock().lock();
+		try {
+			IndexedBook indexed = books.remove(isbn);
+			if (indexed != null) {
+				unindex(indexed);
+			}
+			//re-inserted so the map stays in deletion order and the oldest one is evicted first
+			deletions.remove(isbn);
+			deletions.put(isbn, ++deletionCount);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void unindex(IndexedBook indexed) {
+		for (String term : indexed.fields.keySet()) {
+			Map<String, Integer> postings = terms.get(term);
+			if (postings != null) {
+				postings.remove(indexed.book.getIsbn());
+				if (postings.isEmpty()) {
+					terms.remove(term);
+				}
+			}
+		}
+	}
+
+	//Lower case, accents stripped, split on anything that is not a letter or a digit
+	static List<String> tokenize(String text) {
+		if (text == null || text.isBlank()) {
+			return List.of();
+		}
+		String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+		List<String> tokens = new ArrayList<>();
+		for (String token : SEPARATORS.split(normalized)) {
+			if (!token.isEmpty()) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	//A book with its own terms, so the index can drop them again and check candidates without a posting lookup
+	private static final class IndexedBook {
+
+		private final Books book;
+		//term -> TITLE and/or AUTHOR bits
+		private final Map<String, Integer> fields = new HashMap<>();
+
+		private IndexedBook(Books book) {
+			this.book = book;
+			tokenize(book.getTitle()).forEach(term -> fields.merge(term, TITLE, (a, b) -> a | b));
+			tokenize(book.getAuthor()).forEach(term -> fields.merge(term, AUTHOR, (a, b) -> a | b));
+		}
+
+		//same scoring as the posting lists: the best of this book's terms the query term matches
+		private double score(String queryTerm, boolean prefix) {
+			if (!prefix) {
+				Integer exact = fields.get(queryTerm);
+				return exact == null ? 0 : BookSearchIndex.score(exact, true);
+			}
+			double best = 0;
+			for (Map.Entry<String, Integer> term : fields.entrySet()) {
+				if (term.getKey().startsWith(queryTerm)) {
+					best = Math.max(best, BookSearchIndex.score(term.getValue(), term.getKey().equals(queryTerm)));
+				}
+			}
+			return best;
+		}
+
+	}
+
+	private static final class ScoredBook {
+
+		private final Books book;
+		private final double score;
+
+		private ScoredBook(Books book, double score) {
+			this.book = book;
+			this.score = score;
+		}
+
+	}
+
+}
@@ -0,0 +1,63 @@
+package service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import repository.BookRepository;
+
+//Tombstones only matter to clients that synced within books.sync.tombstoneRetentionDays, older ones are deleted
+//once an hour. GET /books?since= answers 410 for watermarks before that, so nobody misses a purged deletion.
+@Component
+public class BookTombstonePurger implements SmartInitializingSingleton, AutoCloseable {
+
+	private final BookRepository bookrepo;
+	private final long retentionMillis;
+	private ScheduledExecutorService purger;
+	private Logger logger = Logger.getLogger(BookTombstonePurger.class.getName());
+
+	public BookTombstonePurger(BookRepository bookrepo, @Value("${books.sync.tombstoneRetentionDays:30}") long retentionDays) {
+		super();
+		this.bookrepo = bookrepo;
+		this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		purger = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "book-tombstone-purge");
+			thread.setDaemon(true);
+			return thread;
+		});
+		purger.scheduleWithFixedDelay(this::purgeQuietly, 1, 60, TimeUnit.MINUTES);
+	}
+
+	public int purge() {
+		int purged = bookrepo.purgeTombstones(System.currentTimeMillis() - retentionMillis);
+		logger.fine("Purged " + purged + " book tombstones");
+		return purged;
+	}
+
+	private void purgeQuietly() {
+		try {
+			purge();
+		}
+		catch (RuntimeException e) {
+			//the next run tries again
+			logger.warning("Book tombstone purge failed: " + e);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (purger != null) {
+			purger.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,367 @@
+package service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import models.BookChangeEvent;
+import models.Books;
+import repository.BookRepository;
+
+//Opt-in write-behind for POST /books (books.writeBehind.enabled). Accepted books go into a bounded queue and one writer
+//thread commits them in groups: whatever arrived within maxDelayMillis of the first one, up to batchSize, as JDBC
+//batches in one transaction. That turns many one-row commits into few large ones. A full queue is rejected right away
+//(503), so callers slow down instead of the heap growing. On shutdown new books are refused and the queue is drained
+//before the DataSource closes. The queue is in memory, so a crash loses what it held: a 202 only means accepted,
+//GET /books/{isbn}/status tells when a book is persisted.
+@Component
+public class BookWriteBehind implements SmartLifecycle, MeterBinder {
+
+	public enum Status { PENDING, FAILED }
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final BookRepository bookrepo;
+	private final ApplicationEventPublisher eventPublisher;
+	private final TransactionTemplate transactionTemplate;
+	private final boolean enabled;
+	private final BlockingQueue<Books> queue;
+	private final int batchSize;
+	private final long maxDelayNanos;
+	private final long shutdownTimeoutSeconds;
+	private Logger logger = Logger.getLogger(BookWriteBehind.class.getName());
+
+	//isbn -> copies still queued or being written
+	private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+	//isbn -> why its batch was given up on, until it is posted again
+	private final Cache<String, String> failed = Caffeine.newBuilder()
+			.maximumSize(10_000)
+			.expireAfterWrite(Duration.ofHours(1))
+			.build();
+	private volatile boolean accepting;
+	private volatile boolean running;
+	private Thread writer;
+
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder batchNanos = new LongAdder();
+
+	public BookWriteBehind(BookRepository bookrepo, ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+			@Value("${books.writeBehind.enabled:false}") boolean enabled,
+			@Value("${books.writeBehind.queueCapacity:10000}") int queueCapacity,
+			@Value("${books.writeBehind.batchSize:500}") int batchSize,
+			@Value("${books.writeBehind.maxDelayMillis:20}") long maxDelayMillis,
+			@Value("${books.writeBehind.shutdownTimeoutSeconds:30}") long shutdownTimeoutSeconds) {
+		super();
+		this.bookrepo = bookrepo;
+		this.eventPublisher = eventPublisher;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.enabled = enabled;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.batchSize = batchSize;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	//false when the queue is full or the application is shutting down
+	public boolean offer(Books book) {
+		if (!accepting) {
+			rejected.increment();
+			return false;
+		}
+		pending.merge(book.getIsbn(), 1, Integer::sum);
+		failed.invalidate(book.getIsbn());
+		if (!queue.offer(book)) {
+			done(book.getIsbn());
+			rejected.increment();
+			return false;
+		}
+		accepted.increment();
+		return true;
+	}
+
+	//PENDING while queued or being written, FAILED when its batch was given up on, null otherwise
+	public Status status(String isbn) {
+		if (pending.containsKey(isbn)) {
+			return Status.PENDING;
+		}
+		return failed.getIfPresent(isbn) != null ? Status.FAILED : null;
+	}
+
+	public String failure(String isbn) {
+		return failed.getIfPresent(isbn);
+	}
+
+	//Roughly how long the queue takes to drain at the recent batch rate, at least one second
+	public long retryAfterSeconds() {
+		long count = batches.sum();
+		double batchMillis = count == 0 ? 0 : batchNanos.sum() / 1_000_000.0 / count;
+		double drainMillis = Math.ceil((double) queue.size() / batchSize) * batchMillis;
+		return Math.max(1, (long) Math.ceil(drainMillis / 1000));
+	}
+
+	private void done(String isbn) {
+		pending.computeIfPresent(isbn, (key, copies) -> copies == 1 ? null : copies - 1);
+	}
+
+	private void drain() {
+		List<Books> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				Books first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				//group commit: keep collecting until the batch is full or the window of the first book closes
+				batch.add(first);
+				long deadline = System.nanoTime() + maxDelayNanos;
+				while (batch.size() < batchSize) {
+					queue.drainTo(batch, batchSize - batch.size());
+					long remaining = deadline - System.nanoTime();
+					if (batch.size() >= batchSize || remaining <= 0) {
+						break;
+					}
+					Books next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			}
+			catch (InterruptedException e) {
+				//only stop() interrupts, and only once the shutdown timeout is up: write what was taken, then quit
+				running = false;
+				Thread.currentThread().interrupt();
+			}
+			if (!batch.isEmpty()) {
+				try {
+					write(batch);
+				}
+				catch (RuntimeException e) {
+					//nothing may end this thread, the queue would only fill up behind it
+					giveUp(batch, e);
+				}
+				batch.clear();
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+		}
+	}
+
+	//Any exception is retried, not only DataAccessException: a pool timeout surfaces from the TransactionTemplate as a
+	//CannotCreateTransactionException. When one bad row is what fails the batch, the books are written one by one so
+	//the others still get in
+	private void write(List<Books> batch) {
+		long started = System.nanoTime();
+		RuntimeException failure = commit(batch);
+		if (failure == null) {
+			committed(batch, started);
+			return;
+		}
+		logger.warning("Giving up on a batch of " + batch.size() + " books: "
+				+ NestedExceptionUtils.getMostSpecificCause(failure).getMessage());
+		if (batch.size() == 1 || !isRowError(failure)) {
+			giveUp(batch, failure);
+			return;
+		}
+		List<Books> saved = new ArrayList<>(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			Books book = batch.get(i);
+			try {
+				transactionTemplate.executeWithoutResult(status -> bookrepo.upsertAll(List.of(book), 1));
+				saved.add(book);
+			}
+			catch (RuntimeException e) {
+				if (!isRowError(e)) {
+					//the database itself is in trouble now, the remaining rows would only wait out the same failure
+					giveUp(batch.subList(i, batch.size()), e);
+					break;
+				}
+				giveUp(List.of(book), e);
+			}
+		}
+		committed(saved, started);
+	}
+
+	//null once the batch is committed, the last failure after MAX_ATTEMPTS otherwise
+	private RuntimeException commit(List<Books> batch) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				transactionTemplate.executeWithoutResult(status -> bookrepo.upsertAll(batch, batchSize));
+				return null;
+			}
+			catch (RuntimeException e) {
+				if (attempt == MAX_ATTEMPTS || Thread.currentThread().isInterrupted()) {
+					return e;
+				}
+				try {
+					Thread.sleep(attempt * 500L);
+				}
+				catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	//rejected because of what a row holds (a constraint, a value too long), not because the database is unavailable
+	private static boolean isRowError(RuntimeException e) {
+		return e instanceof NonTransientDataAccessException && !(e instanceof NonTransientDataAccessResourceException);
+	}
+
+	//The books are no longer pending before they are counted as written, so whoever sees the count also sees that
+	private void committed(List<Books> books, long started) {
+		for (Books book : books) {
+			try {
+				eventPublisher.publishEvent(BookChangeEvent.saved(book));
+			}
+			catch (RuntimeException e) {
+				//the book is committed, a failing listener does not change that
+				logger.warning("BookChangeEvent listener failed for " + book.getIsbn() + ": " + e);
+			}
+			finally {
+				done(book.getIsbn());
+			}
+		}
+		batchNanos.add(System.nanoTime() - started);
+		batches.increment();
+		written.add(books.size());
+	}
+
+	private void giveUp(List<Books> batch, RuntimeException e) {
+		String reason = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+		for (Books book : batch) {
+			failed.put(book.getIsbn(), String.valueOf(reason));
+			done(book.getIsbn());
+		}
+		failures.add(batch.size());
+	}
+
+	@Override
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		running = true;
+		accepting = true;
+		writer = new Thread(this::drain, "book-write-behind");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void stop() {
+		accepting = false;
+		running = false;
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds));
+			if (writer.isAlive()) {
+				writer.interrupt();
+				writer.join(TimeUnit.SECONDS.toMillis(1));
+				logger.warning("Write-behind queue not drained within " + shutdownTimeoutSeconds + " s, " + queue.size() + " books were not written");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	//Lower than the web server's phases, so it stops after the server: no request can queue a book anymore while the
+	//queue drains, and the DataSource is only closed after that
+	@Override
+	public int getPhase() {
+		return SmartLifecycle.DEFAULT_PHASE - 4096;
+	}
+
+	public int queueDepth() {
+		return queue.size();
+	}
+
+	public int queueCapacity() {
+		return queue.size() + queue.remainingCapacity();
+	}
+
+	public long accepted() {
+		return accepted.sum();
+	}
+
+	public long rejected() {
+		return rejected.sum();
+	}
+
+	public long written() {
+		return written.sum();
+	}
+
+	public long failures() {
+		return failures.sum();
+	}
+
+	public long batches() {
+		return batches.sum();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		if (!enabled) {
+			return;
+		}
+		Gauge.builder("books.writebehind.queue.depth", this, BookWriteBehind::queueDepth).register(registry);
+		Gauge.builder("books.writebehind.queue.capacity", this, BookWriteBehind::queueCapacity).register(registry);
+		FunctionCounter.builder("books.writebehind.accepted", this, BookWriteBehind::accepted).register(registry);
+		FunctionCounter.builder("books.writebehind.rejected", this, BookWriteBehind::rejected)
+				.description("Books turned away with a 503 because the queue was full")
+				.register(registry);
+		FunctionCounter.builder("books.writebehind.written", this, BookWriteBehind::written).register(registry);
+		FunctionCounter.builder("books.writebehind.failed", this, BookWriteBehind::failures)
+				.description("Books whose batch still failed after the retries")
+				.register(registry);
+		FunctionTimer.builder("books.writebehind.batch", this, BookWriteBehind::batches, writeBehind -> writeBehind.batchNanos.sum(), TimeUnit.NANOSECONDS)
+				.description("Group commits of the writer thread")
+				.register(registry);
+	}
+
+}
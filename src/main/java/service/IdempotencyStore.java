@@ -0,0 +1,148 @@
+package service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+//Completed responses by Idempotency-Key, so a retried write is answered from memory instead of running again.
+//The first request with a key puts an in-flight entry in and runs the handler; duplicates arriving meanwhile wait on it
+//(at most waitSeconds, then 409) and all get the same response. A handler that throws or answers a 5xx removes its
+//entry, so a waiting duplicate or the next retry runs for real. Bounded by maxEntries and kept for ttlSeconds, per node:
+//behind a load balancer a retry that lands on another node runs again, which the isbn upsert of POST /books makes harmless.
+@Component
+public class IdempotencyStore implements MeterBinder {
+
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+	private final Cache<String, Entry> entries;
+	private final long waitSeconds;
+
+	private final LongAdder replays = new LongAdder();
+	private final LongAdder mismatches = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+
+	public IdempotencyStore(@Value("${idempotency.maxEntries:10000}") long maxEntries,
+			@Value("${idempotency.ttlSeconds:86400}") long ttlSeconds,
+			@Value("${idempotency.waitSeconds:10}") long waitSeconds) {
+		super();
+		this.waitSeconds = waitSeconds;
+		this.entries = Caffeine.newBuilder()
+				.maximumSize(maxEntries)
+				.expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+				.recordStats()
+				.build();
+	}
+
+	//key has to be unique per client already (the caller prefixes the principal). fingerprint identifies the request
+	//body: the same key with another body is a client bug and gets a 422 instead of somebody else's response
+	public ResponseEntity<?> execute(String key, Object fingerprint, Supplier<ResponseEntity<?>> handler) {
+		while (true) {
+			Entry created = new Entry(fingerprint);
+			Entry existing = entries.asMap().putIfAbsent(key, created);
+			if (existing == null) {
+				ResponseEntity<?> response = null;
+				try {
+					response = handler.get();
+					return response;
+				}
+				finally {
+					//Only a response that is not a 5xx is stored. A 5xx (e.g. a full write-behind queue) is not the outcome
+					//of the request, and neither is any exception or Error: the entry goes, and duplicates waiting on it
+					//run the request themselves instead of replaying the failure
+					if (response == null || response.getStatusCode().is5xxServerError()) {
+						entries.asMap().remove(key, created);
+						created.response.completeExceptionally(new IllegalStateException("The request with this Idempotency-Key did not complete"));
+					}
+					else {
+						created.response.complete(response);
+					}
+				}
+			}
+			
+			if (!existing.fingerprint.equals(fingerprint)) {
+				mismatches.increment();
+				return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+						.body(Map.of("error", "Idempotency-Key was already used for a different request"));
+			}
+			try {
+				ResponseEntity<?> response = existing.response.get(waitSeconds, TimeUnit.SECONDS);
+				replays.increment();
+				return ResponseEntity.status(response.getStatusCode())
+						.headers(response.getHeaders())
+						.header(REPLAYED_HEADER, "true")
+						.body(response.getBody());
+			}
+			catch (ExecutionException e) {
+				//the first attempt failed and is gone from the map, this one takes over
+				continue;
+			}
+			catch (TimeoutException e) {
+				timeouts.increment();
+				return ResponseEntity.status(HttpStatus.CONFLICT)
+						.header(HttpHeaders.RETRY_AFTER, "1")
+						.body(Map.of("error", "A request with this Idempotency-Key is still being processed"));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for a request with the same Idempotency-Key", e);
+			}
+		}
+	}
+
+	public long replays() {
+		return replays.sum();
+	}
+
+	public long mismatches() {
+		return mismatches.sum();
+	}
+
+	public long timeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, entries, "idempotency");
+		FunctionCounter.builder("http.idempotency.replays", this, IdempotencyStore::replays)
+				.description("Requests answered with the stored response of an earlier one with the same Idempotency-Key")
+				.register(registry);
+		FunctionCounter.builder("http.idempotency.mismatches", this, IdempotencyStore::mismatches)
+				.description("Idempotency-Keys reused for a different request body, answered with a 422")
+				.register(registry);
+		FunctionCounter.builder("http.idempotency.timeouts", this, IdempotencyStore::timeouts)
+				.description("Duplicates that gave up waiting for the first request, answered with a 409")
+				.register(registry);
+	}
+
+	private static final class Entry {
+
+		private final Object fingerprint;
+		private final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+
+		private Entry(Object fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+	}
+
+}
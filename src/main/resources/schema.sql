@@ -9,4 +9,11 @@ create table if not exists authorities (
 	authority varchar(50) not null,
 	constraint fk_authorities_users foreign key(username) references users(username)
 );
-create unique index if not exists ix_auth_username on authorities (username,authority);
\ No newline at end of file
+create unique index if not exists ix_auth_username on authorities (username,authority);
+create table if not exists revoked_tokens (
+	jti varchar(64) not null primary key,
+	expires_at timestamp not null,
+	revoked_at timestamp default current_timestamp not null
+);
+create index if not exists ix_revoked_tokens_expires_at on revoked_tokens (expires_at);
+create index if not exists ix_revoked_tokens_revoked_at on revoked_tokens (revoked_at);
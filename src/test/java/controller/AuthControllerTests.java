@@ -3,6 +3,7 @@ package controller;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -24,6 +25,7 @@ import controllers.AuthController;
 import models.AuthResponseDTO;
 import models.UserDTO;
 import security.JwtUtil;
+import security.PasswordHashingRejectedException;
 import service.AuthService;
 
 @SpringBootTest(classes = main.CrudAppApplication.class) //Load the Spring Boot application
@@ -106,5 +108,38 @@ public class AuthControllerTests {
 	    assertThat(result.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
 	    assertThat(result.getBody()).isEqualTo(user);
 	}
+	
+	@Test
+	void shouldAnswer429WhenHashingIsSaturated() {
+	    ResponseEntity<?> result = authController.hashingRejected(new PasswordHashingRejectedException(3));
+
+	    assertThat(result.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+	    assertThat(result.getHeaders().getFirst("Retry-After")).isEqualTo("3");
+	}
+
+	@Test
+	void shouldRevokeRefreshAndMatchingAccessToken() {
+	    when(jwtUtil.validateRefreshToken("refresh-token")).thenReturn(true);
+	    when(jwtUtil.getUsernameFromToken("refresh-token")).thenReturn("reader");
+	    when(jwtUtil.getUsernameFromToken("access-token")).thenReturn("reader");
+	    when(jwtUtil.getUsernameFromToken("foreign-token")).thenReturn("someone-else");
+
+	    ResponseEntity<?> result = authController.revoke("Bearer refresh-token", "Bearer access-token");
+	    authController.revoke("Bearer refresh-token", "Bearer foreign-token");
+
+	    assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+	    verify(jwtUtil).revoke("access-token");
+	    verify(jwtUtil, never()).revoke("foreign-token");
+	}
+
+	@Test
+	void shouldNotRevokeInvalidRefreshToken() {
+	    when(jwtUtil.validateRefreshToken("bad-token")).thenReturn(false);
+
+	    ResponseEntity<?> result = authController.revoke("Bearer bad-token", null);
+
+	    assertThat(result.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+	    verify(jwtUtil, never()).revoke(any());
+	}
 
 }
@@ -0,0 +1,132 @@
+package controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import main.CrudAppApplication;
+import models.BookUpdateDTO;
+import models.BooksDTO;
+
+@SpringBootTest(classes = CrudAppApplication.class, properties = "books.changes.bufferSize=4")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class BookChangesIntegrationTest {
+
+	private static final Pattern EVENT = Pattern.compile("id:(\\d+)\\nevent:(\\w+)\\ndata:(.*)\\n");
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private MvcResult subscribe(String lastEventId) throws Exception {
+		return mockMvc.perform(lastEventId == null ? get("/books/changes") : get("/books/changes").header("Last-Event-ID", lastEventId))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+	}
+
+	//events are sent from the subscriber's own thread, so wait until the expected number arrived
+	private static List<String[]> awaitEvents(MvcResult subscription, int count) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		List<String[]> events = new ArrayList<>();
+		while (System.currentTimeMillis() < deadline) {
+			events.clear();
+			Matcher matcher = EVENT.matcher(subscription.getResponse().getContentAsString());
+			while (matcher.find()) {
+				events.add(new String[] {matcher.group(1), matcher.group(2), matcher.group(3)});
+			}
+			if (events.size() >= count) {
+				break;
+			}
+			Thread.sleep(20);
+		}
+		return events;
+	}
+
+	private void saveBook(String isbn) throws Exception {
+		mockMvc.perform(post("/books")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(new BooksDTO("Feed Author", "Feed " + isbn, 10.00, isbn))))
+				.andExpect(status().isAccepted());
+	}
+
+	@WithMockUser
+	@Test
+	void shouldStreamEveryWriteWithIncreasingIds() throws Exception {
+		MvcResult subscription = subscribe(null);
+
+		saveBook("feed-1");
+		BookUpdateDTO updateDTO = new BookUpdateDTO();
+		updateDTO.setPrice(12.00);
+		mockMvc.perform(patch("/books/feed-1")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(updateDTO)))
+				.andExpect(status().isOk());
+		mockMvc.perform(delete("/books/feed-1")).andExpect(status().isNoContent());
+
+		List<String[]> events = awaitEvents(subscription, 3);
+		assertThat(events).extracting(event -> event[1]).containsExactly("saved", "updated", "deleted");
+		assertThat(events.get(0)[2]).contains("\"isbn\":\"feed-1\"").contains("\"title\":\"Feed feed-1\"");
+		assertThat(events.get(1)[2]).isEqualTo("{\"isbn\":\"feed-1\",\"price\":12.0}");
+		assertThat(Long.parseLong(events.get(1)[0])).isEqualTo(Long.parseLong(events.get(0)[0]) + 1);
+		assertThat(Long.parseLong(events.get(2)[0])).isEqualTo(Long.parseLong(events.get(1)[0]) + 1);
+	}
+
+	@WithMockUser
+	@Test
+	void shouldResumeAfterLastEventId() throws Exception {
+		MvcResult first = subscribe(null);
+		saveBook("resume-1");
+		String firstId = awaitEvents(first, 1).get(0)[0];
+		saveBook("resume-2");
+		saveBook("resume-3");
+
+		List<String[]> missed = awaitEvents(subscribe(firstId), 2);
+		assertThat(missed).extracting(event -> event[2]).allMatch(data -> data.contains("resume-2") || data.contains("resume-3"));
+		assertThat(missed).hasSize(2);
+	}
+
+	@WithMockUser
+	@Test
+	void shouldTellClientsToResyncOnceTheirPositionLeftTheBuffer() throws Exception {
+		MvcResult first = subscribe(null);
+		saveBook("gone-1");
+		String firstId = awaitEvents(first, 1).get(0)[0];
+		//the ring holds 4 changes
+		for (int i = 2; i <= 6; i++) {
+			saveBook("gone-" + i);
+		}
+		awaitEvents(first, 6);
+
+		List<String[]> events = awaitEvents(subscribe(firstId), 1);
+		assertThat(events).hasSize(1);
+		assertThat(events.get(0)[1]).isEqualTo("resync");
+		assertThat(Long.parseLong(events.get(0)[0])).isEqualTo(Long.parseLong(firstId) + 5);
+
+		assertThat(awaitEvents(subscribe("not-a-sequence-number"), 1)).extracting(event -> event[1]).containsExactly("resync");
+	}
+
+}
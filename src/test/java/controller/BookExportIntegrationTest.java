@@ -0,0 +1,128 @@
+package controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import main.CrudAppApplication;
+import models.Books;
+import repository.BookRepository;
+
+@SpringBootTest(classes = CrudAppApplication.class)
+@AutoConfigureMockMvc
+class BookExportIntegrationTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private BookRepository bookrepo;
+
+	private static Books book(String isbn, String author, String title, double price) {
+		Books book = new Books();
+		book.setIsbn(isbn);
+		book.setAuthor(author);
+		book.setTitle(title);
+		book.setPrice(price);
+		return book;
+	}
+
+	@BeforeEach
+	void saveBooks() {
+		bookrepo.upsertAll(List.of(
+				book("export-1", "Plain Author", "Plain Title", 12.5),
+				book("export-2", "Doe, Jane", "The \"Quoted\" Book", 7.0)), 100);
+	}
+
+	private MvcResult export(String format, String acceptEncoding) throws Exception {
+		MvcResult result = mockMvc.perform(get("/books/export").param("format", format).header("Accept-Encoding", acceptEncoding))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		return mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andReturn();
+	}
+
+	private static List<String> exportedLines(String body) {
+		return Arrays.stream(body.split("\r?\n")).filter(line -> line.contains("export-")).toList();
+	}
+
+	@WithMockUser
+	@Test
+	void ndjsonShouldHaveOneBookPerLine() throws Exception {
+		MvcResult result = export("ndjson", "identity");
+		assertThat(result.getResponse().getContentType()).startsWith("application/x-ndjson");
+		assertThat(result.getResponse().getHeader("Content-Disposition")).contains("books.ndjson");
+
+		String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+		assertThat(body).endsWith("\n");
+		List<String> lines = exportedLines(body);
+		assertThat(lines).hasSize(2);
+		//byte for byte, nothing in front of the books after the first line
+		assertThat(lines.get(1)).isEqualTo(objectMapper.writeValueAsString(bookrepo.findCurrent("export-2").orElseThrow()));
+		assertThat(body.split("\n")).allMatch(line -> line.startsWith("{"));
+		JsonNode quoted = objectMapper.readTree(lines.get(1));
+		assertThat(quoted.get("isbn").asText()).isEqualTo("export-2");
+		assertThat(quoted.get("title").asText()).isEqualTo("The \"Quoted\" Book");
+		assertThat(quoted.get("price").asDouble()).isEqualTo(7.0);
+	}
+
+	@WithMockUser
+	@Test
+	void csvShouldQuoteOnlyWhereNeeded() throws Exception {
+		MvcResult result = export("csv", "identity");
+		assertThat(result.getResponse().getContentType()).startsWith("text/csv");
+
+		String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+		assertThat(body).startsWith("isbn,author,title,price,version,updatedAt\n");
+		List<String> lines = exportedLines(body);
+		assertThat(lines.get(0)).startsWith("export-1,Plain Author,Plain Title,12.5,");
+		assertThat(lines.get(1)).startsWith("export-2,\"Doe, Jane\",\"The \"\"Quoted\"\" Book\",7.0,");
+	}
+
+	@WithMockUser
+	@Test
+	void exportShouldBeGzippedWhenAccepted() throws Exception {
+		MvcResult result = export("csv", "gzip");
+		assertThat(result.getResponse().getHeader("Content-Encoding")).isEqualTo("gzip");
+
+		byte[] compressed = result.getResponse().getContentAsByteArray();
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+			assertThat(exportedLines(body)).hasSize(2);
+		}
+	}
+
+	@WithMockUser
+	@Test
+	void unknownFormatShouldBeABadRequest() throws Exception {
+		mockMvc.perform(get("/books/export").param("format", "xml"))
+				.andExpect(status().isBadRequest())
+				.andExpect(header().doesNotExist("Content-Disposition"));
+	}
+
+}
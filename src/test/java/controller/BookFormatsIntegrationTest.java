@@ -0,0 +1,188 @@
+package controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import main.CrudAppApplication;
+import models.Books;
+import models.BooksDTO;
+import models.BookUpdateDTO;
+import repository.BookRepository;
+
+@SpringBootTest(classes = CrudAppApplication.class)
+@AutoConfigureMockMvc
+class BookFormatsIntegrationTest {
+
+	private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+	private static final MediaType PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+
+	private static final CBORMapper CBOR_MAPPER = new CBORMapper();
+	private static final SmileMapper SMILE_MAPPER = new SmileMapper();
+	private static final ProtobufMapper PROTOBUF_MAPPER = new ProtobufMapper();
+	private static NativeProtobufSchema schema;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private BookRepository bookrepo;
+
+	@BeforeAll
+	static void loadSchema() throws Exception {
+		schema = ProtobufSchemaLoader.std.loadNative(new ClassPathResource("books.proto").getURL());
+	}
+
+	private static Books book(String isbn, String author, String title, double price) {
+		Books book = new Books();
+		book.setIsbn(isbn);
+		book.setAuthor(author);
+		book.setTitle(title);
+		book.setPrice(price);
+		return book;
+	}
+
+	@BeforeEach
+	void saveBooks() {
+		bookrepo.upsertAll(List.of(
+				book("formats-1", "Format Author", "Binary Title", 12.5),
+				book("formats-2", "Format Author", "Second Title", 7.25)), 100);
+	}
+
+	@WithMockUser
+	@Test
+	void cborShouldHaveItsOwnETag() throws Exception {
+		MvcResult result = mockMvc.perform(get("/books/formats-1").accept(MediaType.APPLICATION_CBOR))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+				.andExpect(header().string("Vary", "Accept"))
+				.andReturn();
+		String etag = result.getResponse().getHeader("ETag");
+		assertThat(etag).endsWith("-cbor\"");
+
+		Books book = CBOR_MAPPER.readValue(result.getResponse().getContentAsByteArray(), Books.class);
+		assertThat(book.getTitle()).isEqualTo("Binary Title");
+		assertThat(book.getPrice()).isEqualTo(12.5);
+
+		mockMvc.perform(get("/books/formats-1").accept(MediaType.APPLICATION_CBOR).header("If-None-Match", etag))
+				.andExpect(status().isNotModified());
+		//the JSON representation is a different body, so the CBOR ETag does not match it
+		mockMvc.perform(get("/books/formats-1").accept(MediaType.APPLICATION_JSON).header("If-None-Match", etag))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.isbn").value("formats-1"));
+	}
+
+	@WithMockUser
+	@Test
+	void smilePageShouldCarryTheCursor() throws Exception {
+		MvcResult result = mockMvc.perform(get("/books").param("after", "formats-0").param("limit", "1").accept(SMILE))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(SMILE))
+				.andExpect(header().string("ETag", endsWith("-smile\"")))
+				.andReturn();
+
+		JsonNode page = SMILE_MAPPER.readTree(result.getResponse().getContentAsByteArray());
+		assertThat(page.get("books").get(0).get("isbn").asText()).isEqualTo("formats-1");
+		assertThat(page.get("nextCursor").asText()).isEqualTo("formats-1");
+	}
+
+	@WithMockUser
+	@Test
+	void protobufShouldCoverSingleBooksAndTheStreamedList() throws Exception {
+		byte[] single = mockMvc.perform(get("/books/formats-2").accept(PROTOBUF))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(PROTOBUF))
+				.andReturn().getResponse().getContentAsByteArray();
+		Books book = PROTOBUF_MAPPER.readerFor(Books.class).with(schema.forType("Book")).readValue(single);
+		assertThat(book.getAuthor()).isEqualTo("Format Author");
+		assertThat(book.getPrice()).isEqualTo(7.25);
+		assertThat(book.getVersion()).isNotNull();
+
+		MvcResult started = mockMvc.perform(get("/books").accept(PROTOBUF).header("Accept-Encoding", "identity"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		MvcResult result = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andReturn();
+		assertThat(result.getResponse().getHeader("ETag")).endsWith("-protobuf\"");
+
+		JsonNode list = PROTOBUF_MAPPER.readerFor(JsonNode.class).with(schema.forType("BookList"))
+				.readValue(result.getResponse().getContentAsByteArray());
+		List<String> isbns = list.get("books").findValuesAsText("isbn");
+		assertThat(isbns).contains("formats-1", "formats-2");
+	}
+
+	@WithMockUser
+	@Test
+	void binaryBodiesShouldBeAcceptedOnWrites() throws Exception {
+		byte[] created = mockMvc.perform(post("/books")
+						.contentType(PROTOBUF)
+						.accept(MediaType.APPLICATION_CBOR)
+						.content(PROTOBUF_MAPPER.writer(schema.forType("Book"))
+								.writeValueAsBytes(new BooksDTO("Proto Author", "Proto Title", 9.5, "formats-3"))))
+				.andExpect(status().isAccepted())
+				.andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+				.andExpect(header().string("ETag", endsWith("-cbor\"")))
+				.andReturn().getResponse().getContentAsByteArray();
+		assertThat(CBOR_MAPPER.readValue(created, Books.class).getTitle()).isEqualTo("Proto Title");
+
+		mockMvc.perform(post("/books")
+						.contentType(MediaType.APPLICATION_CBOR)
+						.content(CBOR_MAPPER.writeValueAsBytes(new BooksDTO("Cbor Author", "Cbor Title", 3.0, "formats-4"))))
+				.andExpect(status().isAccepted())
+				.andExpect(jsonPath("$.title").value("Cbor Title"));
+
+		BookUpdateDTO update = new BookUpdateDTO();
+		update.setPrice(11.0);
+		mockMvc.perform(patch("/books/formats-3")
+						.contentType(SMILE)
+						.content(SMILE_MAPPER.writeValueAsBytes(update)))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.price").value(11.0));
+		assertThat(bookrepo.findById("formats-3").orElseThrow().getPrice()).isEqualTo(11.0);
+	}
+
+	@WithMockUser
+	@Test
+	void unsupportedAcceptShouldBeNotAcceptable() throws Exception {
+		mockMvc.perform(get("/books/formats-1").accept(MediaType.APPLICATION_XML))
+				.andExpect(status().isNotAcceptable());
+		//clients that take anything keep getting JSON
+		mockMvc.perform(get("/books/formats-1").accept(MediaType.ALL))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(header().string("ETag", not(containsString("-cbor"))));
+	}
+
+}
@@ -0,0 +1,96 @@
+package controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import main.CrudAppApplication;
+import models.BooksDTO;
+
+//Small chunks and batches so a handful of records already spans several transactions
+@SpringBootTest(classes = CrudAppApplication.class, properties = {"books.import.chunkSize=2", "books.import.batchSize=2"})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class BookImportControllerIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @WithMockUser
+    @Test
+    void shouldImportValidNdjsonRecordsAndReportTheRest() throws Exception {
+        String body = """
+                {"isbn":"b-1","author":"Batch Author","title":"First","price":10.0}
+                {"isbn":"b-2","author":"Batch Author","title":"Second","price":11.0}
+
+                {"isbn":"b-3","title":"No Author","price":12.0}
+                {"isbn":"b-4", not json
+                {"isbn":"b-5","author":"Batch Author","title":"Fifth","price":13.0}
+                """;
+
+        mockMvc.perform(post("/books/batch")
+                        .contentType("application/x-ndjson")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(5))
+                .andExpect(jsonPath("$.imported").value(3))
+                .andExpect(jsonPath("$.failed").value(2))
+                .andExpect(jsonPath("$.errors[0].record").value(4))
+                .andExpect(jsonPath("$.errors[0].isbn").value("b-3"))
+                .andExpect(jsonPath("$.errors[0].errors.author").value("Author name required"))
+                .andExpect(jsonPath("$.errors[1].record").value(5));
+
+        mockMvc.perform(get("/books/b-5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Fifth"));
+        mockMvc.perform(get("/books/b-3"))
+                .andExpect(status().isNotFound());
+    }
+
+    @WithMockUser
+    @Test
+    void shouldInsertAndUpdateFromCsv() throws Exception {
+        mockMvc.perform(post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BooksDTO("Old Author", "Old Title", 5.00, "c-1"))))
+                .andExpect(status().isAccepted());
+
+        String body = """
+                title,isbn,author,price
+                "New Title, Revised",c-1,New Author,6.50
+                Another,c-2,Someone,7
+                Bad Price,c-3,Someone,cheap
+                """;
+
+        mockMvc.perform(post("/books/batch")
+                        .contentType("text/csv")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.errors[0].record").value(3))
+                .andExpect(jsonPath("$.errors[0].errors.price").value(containsString("number")));
+
+        mockMvc.perform(get("/books/c-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("New Title, Revised"))
+                .andExpect(jsonPath("$.price").value(6.5));
+        mockMvc.perform(get("/books/c-2"))
+                .andExpect(status().isOk());
+    }
+
+}
@@ -0,0 +1,125 @@
+package controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import main.CrudAppApplication;
+import models.BookUpdateDTO;
+import models.BooksDTO;
+
+//settleMillis=0 so writes show up in the very next delta
+@SpringBootTest(classes = CrudAppApplication.class, properties = "books.sync.settleMillis=0")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class BookSyncIntegrationTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private void saveBook(String isbn) throws Exception {
+		mockMvc.perform(post("/books")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(new BooksDTO("Sync Author", "Sync " + isbn, 10.00, isbn))))
+				.andExpect(status().isAccepted());
+	}
+
+	private JsonNode delta(String since, int limit) throws Exception {
+		return objectMapper.readTree(mockMvc.perform(get("/books").param("since", since).param("limit", String.valueOf(limit)))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString());
+	}
+
+	//wait for the clock to move on, so the writes after it get a later updated_at than the watermark
+	private static void nextMillisecond() throws InterruptedException {
+		long now = System.currentTimeMillis();
+		while (System.currentTimeMillis() <= now + 1) {
+			Thread.sleep(1);
+		}
+	}
+
+	@WithMockUser
+	@Test
+	void shouldReturnOnlyChangesAndTombstonesAfterTheWatermark() throws Exception {
+		saveBook("sync-1");
+		saveBook("sync-2");
+		saveBook("sync-3");
+		nextMillisecond();
+
+		//initial sync in pages of two
+		JsonNode first = delta("0", 2);
+		JsonNode second = delta(first.get("nextSince").asText(), 2);
+		mockMvc.perform(get("/books").param("since", "0").param("limit", "2"))
+				.andExpect(jsonPath("$.books[*].isbn").value(contains("sync-1", "sync-2")))
+				.andExpect(jsonPath("$.hasMore").value(true));
+		mockMvc.perform(get("/books").param("since", first.get("nextSince").asText()).param("limit", "2"))
+				.andExpect(jsonPath("$.books[*].isbn").value(contains("sync-3")))
+				.andExpect(jsonPath("$.hasMore").value(false));
+
+		//caught up: nothing new
+		String watermark = second.get("nextSince").asText();
+		mockMvc.perform(get("/books").param("since", watermark))
+				.andExpect(jsonPath("$.books").value(empty()))
+				.andExpect(jsonPath("$.deleted").value(empty()));
+
+		nextMillisecond();
+		BookUpdateDTO updateDTO = new BookUpdateDTO();
+		updateDTO.setTitle("Sync 1, revised");
+		mockMvc.perform(patch("/books/sync-1")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(updateDTO)))
+				.andExpect(status().isOk());
+		mockMvc.perform(delete("/books/sync-2")).andExpect(status().isNoContent());
+		nextMillisecond();
+
+		mockMvc.perform(get("/books").param("since", watermark))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.books[*].isbn").value(contains("sync-1")))
+				.andExpect(jsonPath("$.books[0].title").value("Sync 1, revised"))
+				.andExpect(jsonPath("$.deleted[*].isbn").value(contains("sync-2")))
+				.andExpect(jsonPath("$.hasMore").value(false));
+	}
+
+	@WithMockUser
+	@Test
+	void shouldAcceptTimestampsAndRejectBadOrExpiredWatermarks() throws Exception {
+		long start = System.currentTimeMillis() - 1;
+		saveBook("stamp-1");
+		nextMillisecond();
+
+		mockMvc.perform(get("/books").param("since", Instant.ofEpochMilli(start).toString()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.books[*].isbn").value(contains("stamp-1")));
+		mockMvc.perform(get("/books").param("since", "yesterday"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.since").exists());
+		//older than the 30 day tombstone retention
+		mockMvc.perform(get("/books").param("since", String.valueOf(start - 31L * 24 * 60 * 60 * 1000)))
+				.andExpect(status().isGone());
+		mockMvc.perform(get("/books").param("since", "0").param("limit", "0"))
+				.andExpect(status().isBadRequest());
+	}
+
+}
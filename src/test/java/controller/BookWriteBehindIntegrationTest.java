@@ -0,0 +1,97 @@
+package controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import main.CrudAppApplication;
+import models.BooksDTO;
+import service.BookWriteBehind;
+
+//Own database, the writer thread may still be committing when other test contexts look at theirs
+@SpringBootTest(classes = CrudAppApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:write_behind;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"books.writeBehind.enabled=true",
+		"books.writeBehind.maxDelayMillis=50",
+		"sql.accounting.headers=true"})
+@AutoConfigureMockMvc
+class BookWriteBehindIntegrationTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private BookWriteBehind writeBehind;
+
+	private String writeStatus(String isbn) throws Exception {
+		String body = mockMvc.perform(get("/books/{isbn}/status", isbn)).andReturn().getResponse().getContentAsString();
+		return objectMapper.readTree(body).get("status").asText();
+	}
+
+	@WithMockUser
+	@Test
+	void postShouldQueueTheBookAndTheWriterShouldPersistIt() throws Exception {
+		long batches = writeBehind.batches();
+		for (int i = 0; i < 5; i++) {
+			mockMvc.perform(post("/books")
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(objectMapper.writeValueAsString(new BooksDTO("Queued Author", "Queued " + i, 10.00 + i, "wb-it-" + i))))
+					.andExpect(status().isAccepted())
+					//nothing touches the database in the request
+					.andExpect(header().string("X-SQL-Statements", "0"))
+					.andExpect(header().string("Location", "/books/wb-it-" + i + "/status"))
+					.andExpect(header().doesNotExist("ETag"))
+					.andExpect(jsonPath("$.isbn").value("wb-it-" + i));
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!writeStatus("wb-it-4").equals("persisted")) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(10);
+		}
+		assertThat(writeStatus("wb-it-0")).isEqualTo("persisted");
+		//the five posts came within one window, at most a couple of group commits
+		assertThat(writeBehind.batches() - batches).isBetween(1L, 2L);
+
+		mockMvc.perform(get("/books/{isbn}", "wb-it-2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.title").value("Queued 2"));
+	}
+
+	@WithMockUser
+	@Test
+	void statusOfAnUnknownBookShouldBeNotFound() throws Exception {
+		mockMvc.perform(get("/books/{isbn}/status", "wb-never-posted"))
+				.andExpect(status().isNotFound())
+				.andExpect(jsonPath("$.status").value("unknown"));
+	}
+
+	@WithMockUser
+	@Test
+	void invalidBooksShouldStillBeRejectedBeforeTheQueue() throws Exception {
+		mockMvc.perform(post("/books")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(new BooksDTO("", "", -1.0, "wb-invalid"))))
+				.andExpect(status().isBadRequest());
+		assertThat(writeBehind.status("wb-invalid")).isNull();
+	}
+
+}
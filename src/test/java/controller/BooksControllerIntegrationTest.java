@@ -7,6 +7,7 @@ import main.CrudAppApplication;
 import models.Books;
 import models.BooksDTO;
 import models.BookUpdateDTO;
+import repo.SqlBudget;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -68,12 +69,15 @@ class BooksControllerIntegrationTest {
                 .content(objectMapper.writeValueAsString(dto)))
                 .andExpect(status().isAccepted());
         
+        //the unpaged listing is streamed, so the body is only complete after the async dispatch
         MvcResult result = mockMvc.perform(get("/books")
                 .accept(MediaType.APPLICATION_JSON))
-            .andExpect(status().isOk())
+            .andExpect(request().asyncStarted())
             .andReturn();
         
-        String json = result.getResponse().getContentAsString();
+        String json = mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
         
         List<Books> books = objectMapper.readValue(
                 json, new TypeReference<List<Books>>() {});
@@ -82,6 +86,35 @@ class BooksControllerIntegrationTest {
 
     }
 
+    //Search follows the write paths
+    @WithMockUser
+    @Test
+    void shouldFindBooksByTitleAndAuthorPrefix() throws Exception {
+        mockMvc.perform(post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BooksDTO("Ursula Le Guin", "A Wizard of Earthsea", 12.50, "search-1"))))
+                .andExpect(status().isAccepted());
+
+        mockMvc.perform(get("/books/search").param("q", "ursu wiz"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].isbn").value("search-1"));
+
+        BookUpdateDTO update = new BookUpdateDTO();
+        update.setTitle("The Tombs of Atuan");
+        mockMvc.perform(patch("/books/search-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/books/search").param("q", "wizard"))
+                .andExpect(jsonPath("$", hasSize(0)));
+        mockMvc.perform(get("/books/search").param("q", "atuan"))
+                .andExpect(jsonPath("$[0].isbn").value("search-1"));
+        mockMvc.perform(get("/books/search"))
+                .andExpect(status().isBadRequest());
+    }
+
     //Modify
     @WithMockUser
     @Test
@@ -122,11 +155,36 @@ class BooksControllerIntegrationTest {
                 .andExpect(status().isNoContent());
 
         // confirm it’s gone
-        mockMvc.perform(get("/books"))
+        MvcResult result = mockMvc.perform(get("/books"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$[*].isbn").value(not(hasItem("444"))));
     }
     
+    //Keyset pages
+    @WithMockUser
+    @Test
+    void shouldPageThroughBooksWithCursor() throws Exception {
+        for (String isbn : List.of("p-1", "p-2", "p-3")) {
+            mockMvc.perform(post("/books")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(new BooksDTO("Page Author", "Page " + isbn, 5.00, isbn))))
+                    .andExpect(status().isAccepted());
+        }
+
+        mockMvc.perform(get("/books").param("after", "p-").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books[*].isbn").value(contains("p-1", "p-2")))
+                .andExpect(jsonPath("$.nextCursor").value("p-2"));
+
+        mockMvc.perform(get("/books").param("after", "p-2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books[*].isbn").value(contains("p-3")))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+    
     @WithMockUser
     @Test
     void shouldReturnABook() throws Exception {
@@ -153,4 +211,143 @@ class BooksControllerIntegrationTest {
         assertThat(book.getIsbn()).isEqualTo("888");
 
     }
+
+    //Conditional requests
+    @WithMockUser
+    @Test
+    void shouldHonourETagsOnReadsAndWrites() throws Exception {
+        mockMvc.perform(post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BooksDTO("Etag Author", "Etag Book", 12.00, "etag-1"))))
+                .andExpect(status().isAccepted());
+
+        String etag = mockMvc.perform(get("/books/etag-1"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/books/etag-1").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        BookUpdateDTO updateDTO = new BookUpdateDTO();
+        updateDTO.setTitle("Etag Book, Second Edition");
+        mockMvc.perform(patch("/books/etag-1").header("If-Match", etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(updateDTO)))
+                .andExpect(status().isOk());
+
+        //the version moved on, so the old ETag is stale for both reads and writes
+        mockMvc.perform(get("/books/etag-1").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(1));
+        mockMvc.perform(delete("/books/etag-1").header("If-Match", etag))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(delete("/books/missing").header("If-Match", etag))
+                .andExpect(status().isNotFound());
+    }
+
+    @WithMockUser
+    @Test
+    void shouldAnswerNotModifiedForUnchangedListing() throws Exception {
+        mockMvc.perform(post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BooksDTO("List Author", "List Book", 12.00, "list-1"))))
+                .andExpect(status().isAccepted());
+
+        String pageEtag = mockMvc.perform(get("/books").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(get("/books").param("limit", "10").header("If-None-Match", pageEtag))
+                .andExpect(status().isNotModified());
+
+        MvcResult result = mockMvc.perform(get("/books"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String listEtag = result.getResponse().getHeader("ETag");
+        mockMvc.perform(get("/books").header("If-None-Match", listEtag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BooksDTO("List Author", "Another", 13.00, "list-2"))))
+                .andExpect(status().isAccepted());
+        mockMvc.perform(get("/books").param("limit", "10").header("If-None-Match", pageEtag))
+                .andExpect(status().isOk());
+    }
+
+    //Query budgets, so an N+1 or a lost cache shows up as a failing test
+    @WithMockUser
+    @Test
+    void shouldStayWithinQueryBudgets() throws Exception {
+        SqlBudget.reset();
+        mockMvc.perform(post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BooksDTO("Budget Author", "Budget Book", 9.00, "budget-1"))))
+                .andExpect(status().isAccepted());
+        //existence check, insert, a tombstone left by an earlier delete and the catalog version
+        SqlBudget.assertAtMost(4, "POST /books");
+
+        SqlBudget.reset();
+        mockMvc.perform(get("/books/budget-1")).andExpect(status().isOk());
+        SqlBudget.assertExactly(1, "GET /books/{isbn} on a cache miss");
+
+        SqlBudget.reset();
+        mockMvc.perform(get("/books/budget-1")).andExpect(status().isOk());
+        SqlBudget.assertExactly(0, "GET /books/{isbn} from the cache");
+
+        BookUpdateDTO updateDTO = new BookUpdateDTO();
+        updateDTO.setPrice(10.00);
+        SqlBudget.reset();
+        mockMvc.perform(patch("/books/budget-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(updateDTO)))
+                .andExpect(status().isOk());
+        //the update, the catalog version and the search index reading the row back
+        SqlBudget.assertAtMost(3, "PATCH /books/{isbn}");
+
+        SqlBudget.reset();
+        mockMvc.perform(get("/books").param("limit", "50")).andExpect(status().isOk());
+        SqlBudget.assertAtMost(1, "GET /books?limit=50");
+
+        SqlBudget.reset();
+        mockMvc.perform(delete("/books/budget-1")).andExpect(status().isNoContent());
+        //the delete, its tombstone for GET /books?since= and the catalog version
+        SqlBudget.assertAtMost(3, "DELETE /books/{isbn}");
+    }
+
+    @WithMockUser
+    @Test
+    void retriesWithTheSameIdempotencyKeyShouldBeReplayedFromMemory() throws Exception {
+        String body = objectMapper.writeValueAsString(new BooksDTO("Retry Author", "Retried Book", 15.00, "retry-1"));
+        mockMvc.perform(post("/books")
+                .header("Idempotency-Key", "order-42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isAccepted())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+
+        SqlBudget.reset();
+        mockMvc.perform(post("/books")
+                .header("Idempotency-Key", "order-42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.isbn").value("retry-1"));
+        SqlBudget.assertExactly(0, "POST /books retried with the same Idempotency-Key");
+
+        //same key, different body
+        mockMvc.perform(post("/books")
+                .header("Idempotency-Key", "order-42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new BooksDTO("Retry Author", "Another Book", 15.00, "retry-2"))))
+                .andExpect(status().isUnprocessableEntity());
+        mockMvc.perform(post("/books")
+                .header("Idempotency-Key", "")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isBadRequest());
+    }
 }
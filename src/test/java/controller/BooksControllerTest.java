@@ -1,26 +1,45 @@
 package controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import controllers.BookFormats;
 import controllers.BooksController;
 import models.Books;
 import models.BooksDTO;
+import models.BookChangeEvent;
 import models.BookUpdateDTO;
+import models.BooksPageDTO;
+import models.BookSummaryDTO;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
 
 import org.springframework.validation.BindingResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import repository.BookRepository;
+import repository.BookSort;
+import service.BookCache;
+import service.BookWriteBehind;
+import service.IdempotencyStore;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -33,12 +52,17 @@ class BooksControllerTest {
 	private BooksController booksController;
 	private BookRepository bookRepository;
 	private BindingResult bindingResult;
+	private ApplicationEventPublisher eventPublisher;
     
     @BeforeEach
-    void setup() {
+    void setup() throws Exception {
     	bookRepository = mock(BookRepository.class);
-    	booksController = new BooksController(bookRepository);
+    	eventPublisher = mock(ApplicationEventPublisher.class);
+    	booksController = new BooksController(bookRepository, new BookFormats(new ObjectMapper(), Jackson2ObjectMapperBuilder.json()),
+    			new BookCache(bookRepository, 100, 60, 10), eventPublisher, new IdempotencyStore(100, 60, 1),
+    			new BookWriteBehind(bookRepository, eventPublisher, null, false, 1, 1, 1, 1));
     	bindingResult = mock(BindingResult.class);
+    	when(bookRepository.catalogVersion()).thenReturn(42L);
     }
 
 
@@ -52,14 +76,94 @@ class BooksControllerTest {
         book.setAuthor("John Doe");
         book.setPrice(9.99);
 
-        //When the bookRepo's findall method is used, then return the book we have created.
-        when(bookRepository.findAll()).thenReturn(List.of(book));
+        //When the keyset query is used for the first page, then return the book we have created.
+        when(bookRepository.findByIsbnGreaterThanOrderByIsbnAsc("", Limit.of(11))).thenReturn(List.of(book));
         
-        List<Books> response = booksController.showBooks();
-        assertThat(response.getFirst().getIsbn().equals("123"));
+        ResponseEntity<?> response = booksController.showBooksPage(null, 10, null, null);
+        BooksPageDTO page = (BooksPageDTO) response.getBody();
+        assertThat(page.getBooks().getFirst().getIsbn()).isEqualTo("123");
+        assertThat(page.getNextCursor()).isNull();
         
     }
 
+    @Test
+    void showBooksShouldReturnNextCursorWhenMoreRowsExist() throws Exception {
+    	Books first = new Books();
+    	first.setIsbn("100");
+    	Books second = new Books();
+    	second.setIsbn("200");
+
+    	//limit 1 asks the repository for 2 rows, the extra one only tells us there is another page
+    	when(bookRepository.findByIsbnGreaterThanOrderByIsbnAsc("050", Limit.of(2))).thenReturn(List.of(first, second));
+
+    	ResponseEntity<?> response = booksController.showBooksPage("050", 1, null, null);
+    	BooksPageDTO page = (BooksPageDTO) response.getBody();
+    	assertThat(page.getBooks()).containsExactly(first);
+    	assertThat(page.getNextCursor()).isEqualTo("100");
+    }
+
+    @Test
+    void showBooksShouldRejectOutOfRangeLimit() throws Exception {
+    	ResponseEntity<?> response = booksController.showBooksPage(null, 0, null, null);
+    	assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    	verifyNoInteractions(bookRepository);
+    }
+
+    @Test
+    void showBooksWithoutPagingShouldStreamEveryRow() throws Exception {
+    	Books book = new Books();
+    	book.setIsbn("123");
+    	book.setTitle("Test Book");
+    	book.setAuthor("John Doe");
+    	book.setPrice(9.99);
+
+    	doAnswer(invocation -> {
+    		Consumer<Books> action = invocation.getArgument(0);
+    		action.accept(book);
+    		return null;
+    	}).when(bookRepository).forEachBook(any());
+
+    	ResponseEntity<StreamingResponseBody> response = booksController.streamBooks(null, null, null);
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	response.getBody().writeTo(out);
+
+    	assertThat(out.toString()).isEqualTo("[{\"isbn\":\"123\",\"author\":\"John Doe\",\"title\":\"Test Book\",\"price\":9.99,\"version\":null,\"updatedAt\":null}]");
+    	assertThat(response.getHeaders().getETag()).isNotNull();
+    	verify(bookRepository, never()).findAll();
+    	//the ETag comes from the stamp, the rows are read once for the body
+    	verify(bookRepository, times(1)).forEachBook(any());
+    }
+
+    @Test
+    void showBooksShouldGzipWhenTheClientAcceptsIt() throws Exception {
+    	Books book = new Books();
+    	book.setIsbn("123");
+    	book.setTitle("Test Book");
+    	book.setAuthor("John Doe");
+    	book.setPrice(9.99);
+
+    	doAnswer(invocation -> {
+    		Consumer<Books> action = invocation.getArgument(0);
+    		action.accept(book);
+    		return null;
+    	}).when(bookRepository).forEachBook(any());
+
+    	ResponseEntity<StreamingResponseBody> response = booksController.streamBooks(null, "deflate, gzip;q=0.8", null);
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	response.getBody().writeTo(out);
+
+    	assertThat(response.getHeaders().getFirst("Content-Encoding")).isEqualTo("gzip");
+    	assertThat(response.getHeaders().getVary()).containsExactly("Accept", "Accept-Encoding");
+    	assertThat(response.getHeaders().getETag()).endsWith("-gzip\"");
+    	try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+    		assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+    				.isEqualTo("[{\"isbn\":\"123\",\"author\":\"John Doe\",\"title\":\"Test Book\",\"price\":9.99,\"version\":null,\"updatedAt\":null}]");
+    	}
+
+    	//gzip;q=0 opts out even though the wildcard would allow it
+    	assertThat(booksController.streamBooks(null, "*, gzip;q=0", null).getHeaders().getFirst("Content-Encoding")).isNull();
+    }
+
     @Test
     void addBookShouldSaveAndReturnBook() throws Exception {
     	// Create a new book DTO
@@ -73,7 +177,7 @@ class BooksControllerTest {
         //Return the Book object when the save method is called for bookRepo
         when(bookRepository.save(any(Books.class))).thenReturn(savedBook);
 
-        ResponseEntity<Books> response = (ResponseEntity<Books>) booksController.addBookSubmit(dto, bindingResult);
+        ResponseEntity<Books> response = (ResponseEntity<Books>) booksController.addBookSubmit(dto, bindingResult, null, null, null);
         
         assertThat(response.getBody().getIsbn().equals("234"));
     }
@@ -82,50 +186,156 @@ class BooksControllerTest {
     void updateBookShouldPatchAndReturnUpdatedBook() throws Exception {
         // Arrange
         String isbn = "789";
-        Books existingBook = new Books();
-        existingBook.setIsbn(isbn);
-        existingBook.setTitle("Old Title");
-        existingBook.setAuthor("Old Author");
-        existingBook.setPrice(10.0);
 
         BookUpdateDTO updateDTO = new BookUpdateDTO();
         updateDTO.setTitle("New Title");
 
-        when(bookRepository.findById(isbn)).thenReturn(Optional.of(existingBook));
-        when(bookRepository.save(any(Books.class))).thenReturn(existingBook);
+        when(bookRepository.updateFields(isbn, "New Title", null, null)).thenReturn(1);
 
         BindingResult bindingResult = mock(BindingResult.class);
         when(bindingResult.hasErrors()).thenReturn(false);
 
         // Act
         ResponseEntity<?> response =
-                booksController.updateBook(isbn, updateDTO, bindingResult);
+                booksController.updateBook(isbn, updateDTO, bindingResult, null);
 
         // Assert
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
-        assertThat(((Books) response.getBody()).getTitle()).isEqualTo("New Title");
+        assertThat((Map<String, Object>) response.getBody()).containsEntry("isbn", isbn).containsEntry("title", "New Title");
+        //a single UPDATE, no load-then-save
+        verify(bookRepository, never()).findById(any());
+        verify(bookRepository, never()).save(any());
+    }
+
+    @Test
+    void updateBookShouldReturnNotFoundWhenNoRowChanged() throws Exception {
+        BookUpdateDTO updateDTO = new BookUpdateDTO();
+        updateDTO.setPrice(5.0);
+
+        when(bookRepository.updateFields("missing", null, null, 5.0)).thenReturn(0);
+
+        ResponseEntity<?> response = booksController.updateBook("missing", updateDTO, bindingResult, null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
     }
 
     @Test
     void deleteBookShouldRemoveBook() {
         // Arrange
         String isbn = "111";
-        Books book = new Books();
-        book.setIsbn(isbn);
-        book.setTitle("Book to Delete");
 
-        when(bookRepository.findById(isbn)).thenReturn(Optional.of(book));
-        doNothing().when(bookRepository).delete(book);
+        when(bookRepository.deleteByIsbn(isbn)).thenReturn(1);
 
         // Act
-        ResponseEntity<?> response = booksController.deleteBook(isbn);
+        ResponseEntity<?> response = booksController.deleteBook(isbn, null);
 
         // Assert
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
-        assertThat(response.getBody()).isEqualTo(book);
-        verify(bookRepository, times(1)).delete(book);
+        verify(bookRepository, times(1)).deleteByIsbn(isbn);
+        verify(eventPublisher).publishEvent(any(BookChangeEvent.class));
+        verify(bookRepository, never()).findById(any());
+    }
+
+    @Test
+    void deleteBookShouldReturnNotFoundWhenNoRowDeleted() {
+        when(bookRepository.deleteByIsbn("missing")).thenReturn(0);
+
+        ResponseEntity<?> response = booksController.deleteBook("missing", null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void showBookShouldAnswerNotModifiedForMatchingETag() {
+        Books book = new Books();
+        book.setIsbn("321");
+        book.setTitle("Cached Book");
+        book.setAuthor("Jane Doe");
+        book.setVersion(2L);
+        when(bookRepository.findById("321")).thenReturn(Optional.of(book));
+
+        String etag = booksController.showBooks("321", null, null).getHeaders().getETag();
+        ResponseEntity<?> response = booksController.showBooks("321", etag, null);
+
+        assertThat(etag).startsWith("\"2-");
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(response.getBody()).isNull();
+    }
+
+    private static Books storedBook(String isbn, String title, long version) {
+        Books book = new Books();
+        book.setIsbn(isbn);
+        book.setAuthor("Author");
+        book.setTitle(title);
+        book.setPrice(10.0);
+        book.setVersion(version);
+        return book;
+    }
+
+    //what BookETags hands out for a book
+    private static String etagOf(Books book) {
+        return "\"" + book.getVersion() + "-" + Integer.toHexString(Objects.hash(book.getIsbn(), book.getAuthor(),
+                book.getTitle(), book.getPrice(), book.getVersion())) + "\"";
+    }
+
+    @Test
+    void updateBookShouldFailPreconditionForStaleIfMatch() {
+        BookUpdateDTO updateDTO = new BookUpdateDTO();
+        updateDTO.setTitle("Too Late");
+
+        when(bookRepository.findCurrent("789")).thenReturn(Optional.of(storedBook("789", "Current", 2)));
+        when(bookRepository.existsById("789")).thenReturn(true);
+
+        ResponseEntity<?> response = booksController.updateBook("789", updateDTO, bindingResult, "\"1-abc\"");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        verify(bookRepository, never()).updateFields(any(), any(), any(), any());
+        verify(bookRepository, never()).updateFieldsIfVersion(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void deleteBookShouldOnlyDeleteTheMatchingVersion() {
+        Books stored = storedBook("111", "Current", 4);
+        when(bookRepository.findCurrent("111")).thenReturn(Optional.of(stored));
+        when(bookRepository.deleteByIsbnIfVersion("111", List.of(4L))).thenReturn(1);
+
+        ResponseEntity<?> response = booksController.deleteBook("111", etagOf(stored));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        verify(bookRepository, never()).deleteByIsbn(any());
+    }
+
+    @Test
+    void ifMatchFromBeforeARecreationShouldNotMatchTheSameVersion() {
+        //read at version 0, then the isbn was deleted and posted again with other content, back at version 0
+        String staleETag = etagOf(storedBook("222", "Deleted Edition", 0));
+        when(bookRepository.findCurrent("222")).thenReturn(Optional.of(storedBook("222", "Recreated Edition", 0)));
+        when(bookRepository.existsById("222")).thenReturn(true);
+
+        ResponseEntity<?> response = booksController.deleteBook("222", staleETag);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        verify(bookRepository, never()).deleteByIsbnIfVersion(any(), any());
+    }
+
+    @Test
+    void filterBooksShouldRejectUnknownSortsAndInvertedRanges() {
+        ResponseEntity<?> response = booksController.filterBooks(null, 20.0, 10.0, "popularity", null, 0);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat((Map<String, Object>) response.getBody()).containsKeys("sort", "minPrice");
+        verify(bookRepository, never()).findSummaries(any(), any(), any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void filterBooksShouldPassTheFiltersToTheRepository() {
+        BookSummaryDTO summary = new BookSummaryDTO("123", "Jane Doe", "Filtered", 12.0);
+        when(bookRepository.findSummaries("Jane Doe", 10.0, null, BookSort.PRICE_DESC, 20, 40)).thenReturn(List.of(summary));
+
+        ResponseEntity<?> response = booksController.filterBooks("Jane Doe", 10.0, null, "-price", 20, 40);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(List.of(summary));
     }
 
-    
-    
 }
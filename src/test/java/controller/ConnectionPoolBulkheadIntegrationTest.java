@@ -0,0 +1,100 @@
+package controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import main.CrudAppApplication;
+import security.JwtUtil;
+
+//The books pool has two connections and a 1 s acquire timeout. With both held, every request still has to get
+//through JwtFilter, whose user lookups (uncached here) run on the separate auth pool.
+@SpringBootTest(classes = CrudAppApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:bulkhead;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"spring.datasource.hikari.maximum-pool-size=2",
+		"spring.datasource.hikari.connection-timeout=1000",
+		"datasource.auth.maximumPoolSize=2",
+		"security.userCache.ttlSeconds=0"})
+@AutoConfigureMockMvc
+@DirtiesContext
+class ConnectionPoolBulkheadIntegrationTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JwtUtil jwtUtil;
+
+	@Autowired
+	private UserDetailsManager userDetailsManager;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private double acquires(String pool) {
+		return meterRegistry.get("hikaricp.connections.acquire").tag("pool", pool).timer().count();
+	}
+
+	private double timeouts(String pool) {
+		return meterRegistry.get("hikaricp.connections.timeout").tag("pool", pool).counter().count();
+	}
+
+	@Test
+	void authenticationShouldNotTouchTheBooksPoolWhileItIsExhausted() throws Exception {
+		UserDetails user = User.withUsername("bulkhead-user").password("{noop}secret").roles("USER").build();
+		userDetailsManager.createUser(user);
+		String bearer = "Bearer " + jwtUtil.generateToken(user);
+
+		List<Connection> held = new ArrayList<>();
+		try {
+			for (int i = 0; i < 2; i++) {
+				held.add(dataSource.getConnection());
+			}
+			double booksAcquires = acquires("books");
+			double authAcquires = acquires("auth");
+
+			//without the bulkhead each of these would wait out the books pool's 1 s timeout and fail
+			for (int i = 0; i < 20; i++) {
+				mockMvc.perform(get("/cache/stats").header("Authorization", bearer)).andExpect(status().isOk());
+			}
+			assertThat(acquires("books")).isEqualTo(booksAcquires);
+			assertThat(timeouts("books")).isZero();
+			assertThat(acquires("auth")).isGreaterThanOrEqualTo(authAcquires + 20);
+
+			//book queries fail with a 503 once the acquire timeout is up
+			mockMvc.perform(get("/books/filter").header("Authorization", bearer))
+					.andExpect(status().isServiceUnavailable())
+					.andExpect(header().string("Retry-After", "1"));
+			assertThat(timeouts("books")).isEqualTo(1);
+		}
+		finally {
+			for (Connection connection : held) {
+				connection.close();
+			}
+		}
+
+		assertThat(timeouts("auth")).isZero();
+	}
+
+}
@@ -0,0 +1,87 @@
+package controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.test.web.servlet.MockMvc;
+
+import main.CrudAppApplication;
+import security.JwtUtil;
+
+//a real server, so the actuator ends up on its own (random) management port like in production
+@SpringBootTest(classes = CrudAppApplication.class, webEnvironment = WebEnvironment.RANDOM_PORT, properties = "sql.accounting.headers=true")
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class MetricsIntegrationTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JwtUtil jwtUtil;
+
+	@Autowired
+	private UserDetailsManager userDetailsManager;
+
+	@LocalServerPort
+	private int port;
+
+	@LocalManagementPort
+	private int managementPort;
+
+	private final TestRestTemplate rest = new TestRestTemplate();
+
+	@Test
+	void prometheusScrapeShouldCoverFilterCachesPoolAndRepository() throws Exception {
+		UserDetails user = User.withUsername("metrics-user").password("{noop}secret").roles("USER").build();
+		userDetailsManager.createUser(user);
+		String bearer = "Bearer " + jwtUtil.generateToken(user);
+
+		mockMvc.perform(get("/books/metrics-missing").header("Authorization", bearer))
+				.andExpect(status().isNotFound())
+				//user and authorities lookups of the JWT filter, then the book lookup
+				.andExpect(header().string("X-SQL-Statements", "3"))
+				.andExpect(header().exists("X-SQL-Time-Ms"));
+
+		//no token needed for the scrape, on the management port
+		assertThat(managementPort).isNotEqualTo(port);
+		ResponseEntity<String> response = rest.getForEntity("http://localhost:" + managementPort + "/actuator/prometheus", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		String scrape = response.getBody();
+
+		assertThat(scrape)
+				.contains("jwt_filter_seconds_count{outcome=\"authenticated\"")
+				.contains("uri=\"/books/{isbn}\"")
+				.contains("spring_data_repository_invocations_seconds_count")
+				.contains("hikaricp_connections_active")
+				.contains("cache_gets_total{cache=\"books\"")
+				.contains("cache_gets_total{cache=\"users\"")
+				.contains("cache_gets_total{cache=\"jwt.tokens\"")
+				.contains("security_password_queue_depth");
+	}
+
+	@Test
+	void theAppPortShouldNotServeTheActuator() throws Exception {
+		mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isNotFound());
+		mockMvc.perform(get("/actuator/health")).andExpect(status().isNotFound());
+		assertThat(rest.getForEntity("http://localhost:" + managementPort + "/actuator/health", String.class).getStatusCode())
+				.isEqualTo(HttpStatus.OK);
+	}
+
+}
@@ -0,0 +1,89 @@
+package controller;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.test.web.servlet.MockMvc;
+
+import io.jsonwebtoken.MalformedJwtException;
+import main.CrudAppApplication;
+import security.JwtUtil;
+
+@SpringBootTest(classes = CrudAppApplication.class, properties = {
+		"rateLimit.auth.capacity=2", "rateLimit.auth.refillPerSecond=0.01",
+		"rateLimit.default.capacity=2", "rateLimit.default.refillPerSecond=0.01"})
+@AutoConfigureMockMvc
+class RateLimitIntegrationTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JwtUtil jwtUtil;
+
+	@Autowired
+	private UserDetailsManager userDetailsManager;
+
+	@Test
+	void shouldAnswer429WithRateLimitHeadersOncePerIpBurstIsUsed() throws Exception {
+		mockMvc.perform(post("/auth/refresh").header("Refresh", "garbage").with(request -> { request.setRemoteAddr("10.1.0.1"); return request; }))
+				.andExpect(status().isBadRequest())
+				.andExpect(header().string("RateLimit-Limit", "2"))
+				.andExpect(header().string("RateLimit-Remaining", "1"))
+				.andExpect(header().string("RateLimit-Policy", "2;w=200"));
+		mockMvc.perform(post("/auth/refresh").header("Refresh", "garbage").with(request -> { request.setRemoteAddr("10.1.0.1"); return request; }))
+				.andExpect(status().isBadRequest())
+				.andExpect(header().string("RateLimit-Remaining", "0"));
+		mockMvc.perform(post("/auth/refresh").header("Refresh", "garbage").with(request -> { request.setRemoteAddr("10.1.0.1"); return request; }))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().string("Retry-After", "100"))
+				.andExpect(jsonPath("$.error").exists());
+
+		//another address still has its own burst
+		mockMvc.perform(post("/auth/refresh").header("Refresh", "garbage").with(request -> { request.setRemoteAddr("10.1.0.2"); return request; }))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void authenticatedClientsShouldBeLimitedPerUserNotPerAddress() throws Exception {
+		UserDetails user = User.withUsername("limited-user").password("{noop}secret").roles("USER").build();
+		userDetailsManager.createUser(user);
+		String bearer = "Bearer " + jwtUtil.generateToken(user);
+
+		//the first request, before JwtFilter verified the token, counts against its address. After that the same user
+		//from three addresses shares one bucket of two
+		for (String address : new String[] {"10.2.0.1", "10.2.0.2", "10.2.0.3"}) {
+			mockMvc.perform(get("/books/limited-missing").header("Authorization", bearer).with(request -> { request.setRemoteAddr(address); return request; }))
+					.andExpect(status().isNotFound());
+		}
+		mockMvc.perform(get("/books/limited-missing").header("Authorization", bearer).with(request -> { request.setRemoteAddr("10.2.0.4"); return request; }))
+				.andExpect(status().isTooManyRequests());
+	}
+
+	@Test
+	void forgedBearerTokensShouldShareTheirAddressBucket() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			String bearer = "Bearer forged." + i + ".token";
+			//let through to JwtFilter, which rejects the token
+			assertThatThrownBy(() -> mockMvc.perform(get("/books/limited-missing").header("Authorization", bearer)
+					.with(request -> { request.setRemoteAddr("10.3.0.1"); return request; })))
+					.isInstanceOf(MalformedJwtException.class);
+		}
+		//a new token does not buy a new bucket
+		mockMvc.perform(get("/books/limited-missing").header("Authorization", "Bearer forged.2.token")
+				.with(request -> { request.setRemoteAddr("10.3.0.1"); return request; }))
+				.andExpect(status().isTooManyRequests());
+	}
+
+}
@@ -0,0 +1,120 @@
+package controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import main.CrudAppApplication;
+import models.BooksDTO;
+import repository.ReplicaRoutingDataSource;
+
+//A second in-memory H2 database plays the replica. Nothing replicates into it, so a row that only exists in one of
+//the two databases shows where a read went. The primary is its own database too, so closing this context does not
+//drop the tables of the cached contexts on testdb.
+@SpringBootTest(classes = CrudAppApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:replica_routing_primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+		"datasource.replicas.urls=" + ReplicaRoutingIntegrationTest.REPLICA_URL,
+		"datasource.replicas.stickySeconds=1"})
+@AutoConfigureMockMvc
+@DirtiesContext
+class ReplicaRoutingIntegrationTest {
+
+	static final String REPLICA_URL = "jdbc:h2:mem:replica_routing;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;"
+			+ "INIT=RUNSCRIPT FROM 'classpath:replica.sql'";
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private DataSource dataSource;
+
+	private JdbcTemplate replica;
+
+	@BeforeEach
+	void seedReplica() {
+		replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+		replica.update("delete from books");
+		replica.update("insert into books (isbn, author, title, price, version, updated_at) values ('replica-only', 'Replica Author', 'Only On The Replica', 9.5, 0, 1)");
+	}
+
+	@Test
+	void readsShouldGoToTheReplicaUnlessTheClientJustWrote() throws Exception {
+		mockMvc.perform(get("/books").param("limit", "10").with(user("reader")))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.books[*].isbn").value(hasItem("replica-only")));
+		mockMvc.perform(get("/books/filter").param("author", "Replica Author").with(user("reader")))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].isbn").value(hasItem("replica-only")));
+
+		mockMvc.perform(post("/books").with(user("writer"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(new BooksDTO("Primary Author", "Written", 12.0, "written"))))
+				.andExpect(status().isAccepted());
+		assertThat(replica.queryForObject("select count(*) from books where isbn = 'written'", Integer.class)).isZero();
+
+		//the writer reads its own write from the primary, everybody else keeps reading the replica
+		mockMvc.perform(get("/books").param("limit", "10").with(user("writer")))
+				.andExpect(jsonPath("$.books[*].isbn").value(hasItem("written")))
+				.andExpect(jsonPath("$.books[*].isbn").value(not(hasItem("replica-only"))));
+		mockMvc.perform(get("/books").param("limit", "10").with(user("reader")))
+				.andExpect(jsonPath("$.books[*].isbn").value(hasItem("replica-only")))
+				.andExpect(jsonPath("$.books[*].isbn").value(not(hasItem("written"))));
+
+		//the streamed listing is written on another thread and has to stay on the primary as well
+		MvcResult streamed = mockMvc.perform(get("/books").with(user("writer")).accept(MediaType.APPLICATION_JSON))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(streamed))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[*].isbn").value(hasItem("written")));
+
+		ReplicaRoutingDataSource routing = dataSource.unwrap(ReplicaRoutingDataSource.class);
+		assertThat(routing.stickyReads()).isPositive();
+		assertThat(routing.replicaConnections()).isPositive();
+
+		//once the stickiness runs out the writer is back on the replica
+		Thread.sleep(1200);
+		mockMvc.perform(get("/books").param("limit", "10").with(user("writer")))
+				.andExpect(jsonPath("$.books[*].isbn").value(hasItem("replica-only")));
+	}
+
+	@Test
+	void theBookCacheShouldOnlyBeFilledFromThePrimary() throws Exception {
+		mockMvc.perform(get("/books/replica-only").with(user("reader"))).andExpect(status().isNotFound());
+
+		mockMvc.perform(post("/books").with(user("writer"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(new BooksDTO("Primary Author", "Cached", 12.0, "cached"))))
+				.andExpect(status().isAccepted());
+		//a reader that is not pinned to the primary does not cache the replica's 404 for everybody
+		mockMvc.perform(get("/books/cached").with(user("reader"))).andExpect(status().isOk());
+		mockMvc.perform(get("/books/cached").with(user("writer"))).andExpect(status().isOk());
+	}
+
+}
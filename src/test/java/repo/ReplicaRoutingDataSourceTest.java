@@ -0,0 +1,116 @@
+package repo;
+
+import repository.ReplicaRouting;
+import repository.ReplicaRoutingDataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource firstReplica = mock(DataSource.class);
+    private final DataSource secondReplica = mock(DataSource.class);
+    private final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource("books", primary,
+            List.of(firstReplica, secondReplica), Duration.ofSeconds(5), 100);
+
+    @AfterEach
+    void endRequest() {
+        ReplicaRouting.end();
+    }
+
+    private Connection read() {
+        return ReplicaRouting.reading(() -> {
+            try {
+                return routing.getConnection();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    void readsOfOneRequestShouldStayOnTheSameReplica() throws Exception {
+        ReplicaRouting.begin(false, () -> "client");
+        for (int i = 0; i < 4; i++) {
+            read();
+        }
+        verify(firstReplica, times(4)).getConnection();
+        verify(secondReplica, never()).getConnection();
+
+        //the next request gets the next replica, round robin still spreads the load
+        ReplicaRouting.begin(false, () -> "other-client");
+        read();
+        read();
+        verify(secondReplica, times(2)).getConnection();
+        assertThat(routing.replicaConnections()).isEqualTo(6);
+    }
+
+    @Test
+    void primaryReadsShouldNotPinTheClient() throws Exception {
+        ReplicaRouting.begin(false, () -> "syncing-client");
+        ReplicaRouting.readingPrimary(() -> {
+            try {
+                return routing.getConnection();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        read();
+        verify(primary, times(1)).getConnection();
+        verify(firstReplica, times(1)).getConnection();
+
+        //a later request of the same client is not treated as a recent writer
+        ReplicaRouting.begin(false, () -> "syncing-client");
+        read();
+        assertThat(routing.stickyReads()).isZero();
+        assertThat(routing.replicaConnections()).isEqualTo(2);
+
+        //a real write does pin it
+        routing.getConnection();
+        ReplicaRouting.begin(false, () -> "syncing-client");
+        read();
+        assertThat(routing.stickyReads()).isEqualTo(1);
+    }
+
+    @Test
+    void aClientKnownOnlyAfterAuthenticationShouldStillBeCheckedForWrites() throws Exception {
+        ReplicaRouting.begin(false, () -> "user:writer");
+        routing.getConnection();
+
+        //the user lookup runs before the security context is set, the books read after it
+        AtomicReference<String> client = new AtomicReference<>("ip:10.0.0.1");
+        ReplicaRouting.begin(false, client::get);
+        read();
+        verify(firstReplica, times(1)).getConnection();
+        client.set("user:writer");
+        read();
+        verify(primary, times(2)).getConnection();
+        assertThat(routing.stickyReads()).isEqualTo(1);
+    }
+
+    @Test
+    void closingShouldCloseEveryPool() throws Exception {
+        DataSource primaryPool = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        DataSource replicaPool = mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+        new ReplicaRoutingDataSource("auth", primaryPool, List.of(replicaPool), Duration.ofSeconds(5), 100).close();
+
+        verify((AutoCloseable) primaryPool).close();
+        verify((AutoCloseable) replicaPool).close();
+    }
+
+}
@@ -1,17 +1,24 @@
 package repo;
 
+import models.BookSummaryDTO;
 import models.Books;
 import repository.BookRepository;
+import repository.BookSort;
+import repository.SqlAccountingConfig;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.ContextConfiguration;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -19,11 +26,15 @@ import static org.assertj.core.api.Assertions.assertThat;
 @DataJpaTest // spins up only JPA-related beans
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
 @ContextConfiguration(classes = main.CrudAppApplication.class)
+@Import(SqlAccountingConfig.class) //slices leave out @Configuration classes, the query budgets need the counting DataSource
 class RepoTest {
 
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     @Rollback(false) //I made rollback false just so I could see if the code is touching the database or not
     void shouldSaveAndFindBookById() throws Exception{
@@ -107,4 +118,192 @@ class RepoTest {
         Optional<Books> deleted = bookRepository.findById("444");
         assertThat(deleted).isEmpty();
     }
+
+    @Test
+    void shouldUpdateOnlyGivenFieldsInOneStatement() throws Exception {
+        Books book = new Books();
+        book.setIsbn("555");
+        book.setAuthor("Kept Author");
+        book.setTitle("Old Title");
+        book.setPrice(50.0);
+        bookRepository.saveAndFlush(book);
+
+        //null author and price must leave those columns alone
+        assertThat(bookRepository.updateFields("555", "New Title", null, null)).isEqualTo(1);
+        assertThat(bookRepository.updateFields("missing", "New Title", null, null)).isZero();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap("select author, title, price from books where isbn = '555'");
+        assertThat(row.get("title")).isEqualTo("New Title");
+        assertThat(row.get("author")).isEqualTo("Kept Author");
+        assertThat(((Number) row.get("price")).doubleValue()).isEqualTo(50.0);
+    }
+
+    @Test
+    void shouldDeleteByIsbnAndReportAffectedRows() throws Exception {
+        Books book = new Books();
+        book.setIsbn("666");
+        book.setAuthor("Delete Author");
+        book.setTitle("Delete Title");
+        book.setPrice(60.0);
+        bookRepository.saveAndFlush(book);
+
+        assertThat(bookRepository.deleteByIsbn("666")).isEqualTo(1);
+        assertThat(bookRepository.deleteByIsbn("666")).isZero();
+    }
+
+    @Test
+    void shouldFilterByAuthorAndPriceRangeInTheRequestedOrder() throws Exception {
+        for (int i = 1; i <= 5; i++) {
+            Books book = new Books();
+            book.setIsbn("f" + i);
+            book.setAuthor(i % 2 == 0 ? "Filter Even" : "Filter Odd");
+            book.setTitle("Filter Title " + (6 - i));
+            book.setPrice(i * 10.0);
+            bookRepository.save(book);
+        }
+        bookRepository.flush();
+
+        List<BookSummaryDTO> odd = bookRepository.findSummaries("Filter Odd", 15.0, null, BookSort.PRICE_DESC, 10, 0);
+        assertThat(odd).extracting(BookSummaryDTO::getIsbn).containsExactly("f5", "f3");
+
+        List<BookSummaryDTO> byTitle = bookRepository.findSummaries(null, 10.0, 40.0, BookSort.TITLE, 2, 1);
+        assertThat(byTitle).extracting(BookSummaryDTO::getTitle).containsExactly("Filter Title 3", "Filter Title 4");
+    }
+
+    @Test
+    void authorFiltersShouldUseTheCompositeIndex() throws Exception {
+        String plan = jdbcTemplate.queryForObject(
+                "explain select isbn, author, title, price from books where author = 'a' and price >= 1 order by price, isbn limit 10",
+                String.class);
+        assertThat(plan).contains("idx_books_author_price");
+    }
+
+    @Test
+    void upsertAllShouldRunOneLookupAndOneBatchPerSlice() throws Exception {
+        List<Books> books = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            Books book = new Books();
+            book.setIsbn("u" + i);
+            book.setAuthor("Upsert Author");
+            book.setTitle("Upsert Title " + i);
+            book.setPrice(i);
+            books.add(book);
+        }
+
+        SqlBudget.reset();
+        bookRepository.upsertAll(books, 100);
+        //3 lookups, 3 insert batches, 3 tombstone deletes and the catalog version, the empty update batch does not reach the database
+        SqlBudget.assertExactly(10, "upsertAll of 250 new books");
+
+        SqlBudget.reset();
+        bookRepository.upsertAll(books, 100);
+        SqlBudget.assertAtMost(7, "upsertAll of 250 existing books");
+    }
+
+    @Test
+    void deletesShouldLeaveTombstonesAndChangesComeBackInKeysetOrder() throws Exception {
+        long before = System.currentTimeMillis() - 1;
+        List<Books> books = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Books book = new Books();
+            book.setIsbn("d" + i);
+            book.setAuthor("Delta Author");
+            book.setTitle("Delta Title " + i);
+            book.setPrice(i);
+            books.add(book);
+        }
+        //one batch, so all three share the same updated_at and only the isbn orders them
+        bookRepository.upsertAll(books, 100);
+        long until = System.currentTimeMillis();
+
+        List<Books> firstPage = bookRepository.findChangedSince(before, null, until, 2);
+        assertThat(firstPage).extracting(Books::getIsbn).containsExactly("d1", "d2");
+        Books last = firstPage.get(1);
+        assertThat(bookRepository.findChangedSince(last.getUpdatedAt(), last.getIsbn(), until, 2))
+                .extracting(Books::getIsbn).containsExactly("d3");
+        assertThat(bookRepository.findChangedSince(until, null, until + 1000, 2)).isEmpty();
+
+        assertThat(bookRepository.deleteByIsbnIfVersion("d2", List.of(5L))).isZero();
+        assertThat(bookRepository.deleteByIsbn("d2")).isEqualTo(1);
+        assertThat(bookRepository.findDeletedSince(before, null, System.currentTimeMillis(), 10))
+                .extracting(tombstone -> tombstone.getIsbn()).containsExactly("d2");
+        assertThat(bookRepository.purgeTombstones(System.currentTimeMillis() + 1)).isEqualTo(1);
+    }
+
+    @Test
+    void creatingADeletedIsbnAgainShouldDropItsTombstone() throws Exception {
+        long before = System.currentTimeMillis() - 1;
+        for (String isbn : List.of("again-1", "again-2")) {
+            Books book = new Books();
+            book.setIsbn(isbn);
+            book.setAuthor("Again Author");
+            book.setTitle("Again Title");
+            book.setPrice(1);
+            bookRepository.upsertAll(List.of(book), 10);
+            bookRepository.deleteByIsbn(isbn);
+        }
+        assertThat(bookRepository.findDeletedSince(before, null, System.currentTimeMillis(), 10))
+                .extracting(tombstone -> tombstone.getIsbn()).containsExactly("again-1", "again-2");
+
+        //a client applying books and then deleted from one delta would otherwise remove the live book again
+        Books imported = new Books();
+        imported.setIsbn("again-1");
+        imported.setAuthor("Again Author");
+        imported.setTitle("Imported Again");
+        imported.setPrice(2);
+        bookRepository.upsertAll(List.of(imported), 10);
+        Books posted = new Books();
+        posted.setIsbn("again-2");
+        posted.setAuthor("Again Author");
+        posted.setTitle("Posted Again");
+        posted.setPrice(3);
+        bookRepository.save(posted);
+
+        assertThat(bookRepository.findDeletedSince(before, null, System.currentTimeMillis(), 10)).isEmpty();
+        assertThat(bookRepository.findChangedSince(before, null, System.currentTimeMillis(), 10))
+                .extracting(Books::getIsbn).containsExactly("again-1", "again-2");
+    }
+
+    @Test
+    void catalogVersionShouldMoveWithEveryWrite() throws Exception {
+        long before = bookRepository.catalogVersion();
+
+        Books book = new Books();
+        book.setIsbn("stamp-1");
+        book.setAuthor("Stamp Author");
+        book.setTitle("Stamp Title");
+        book.setPrice(5);
+        bookRepository.upsertAll(List.of(book), 10);
+        assertThat(bookRepository.catalogVersion()).isEqualTo(before + 1);
+
+        //the same updatedAt twice, even an older one from a node whose clock is behind, still moves it
+        bookRepository.updateFieldsAt("stamp-1", "New Stamp Title", null, null, 1_000L);
+        bookRepository.updateFieldsAt("stamp-1", "Newer Stamp Title", null, null, 1_000L);
+        assertThat(bookRepository.catalogVersion()).isEqualTo(before + 3);
+        assertThat(bookRepository.updateFieldsIfVersionAt("stamp-1", List.of(99L), "Stale", null, null, 1_000L)).isZero();
+        assertThat(bookRepository.catalogVersion()).isEqualTo(before + 3);
+
+        Books saved = bookRepository.findById("stamp-1").orElseThrow();
+        saved.setPrice(6);
+        bookRepository.save(saved);
+        Books created = new Books();
+        created.setIsbn("stamp-2");
+        created.setAuthor("Stamp Author");
+        created.setTitle("Another Stamp Title");
+        created.setPrice(7);
+        bookRepository.save(created);
+        assertThat(bookRepository.catalogVersion()).isEqualTo(before + 5);
+
+        bookRepository.deleteByIsbn("stamp-1");
+        bookRepository.deleteByIsbn("stamp-1");
+        assertThat(bookRepository.catalogVersion()).isEqualTo(before + 6);
+    }
+
+    @Test
+    void deltaQueriesShouldUseTheUpdatedAtIndex() throws Exception {
+        String plan = jdbcTemplate.queryForObject(
+                "explain select isbn from books where (updated_at > 5 or (updated_at = 5 and isbn > 'a')) and updated_at <= 10 order by updated_at, isbn limit 10",
+                String.class);
+        assertThat(plan).contains("idx_books_updated_at");
+    }
 }
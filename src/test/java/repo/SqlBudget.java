@@ -0,0 +1,33 @@
+package repo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import repository.SqlAccounting;
+
+//Query budgets for tests: reset(), run the code under test on this thread (MockMvc included), then assert.
+//A JDBC batch counts as one statement.
+public final class SqlBudget {
+
+    private SqlBudget() {
+    }
+
+    public static void reset() {
+        SqlAccounting.reset();
+    }
+
+    public static long statements() {
+        return SqlAccounting.statements();
+    }
+
+    public static void assertAtMost(long budget, String what) {
+        assertThat(SqlAccounting.statements())
+                .as("%s ran %s, the budget is %d", what, SqlAccounting.describe(), budget)
+                .isLessThanOrEqualTo(budget);
+    }
+
+    public static void assertExactly(long expected, String what) {
+        assertThat(SqlAccounting.statements())
+                .as("%s ran %s, expected %d", what, SqlAccounting.describe(), expected)
+                .isEqualTo(expected);
+    }
+}
@@ -0,0 +1,78 @@
+package security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+class BoundedPasswordEncoderTest {
+
+	private BoundedPasswordEncoder encoder;
+
+	@AfterEach
+	void close() {
+		encoder.close();
+	}
+
+	@Test
+	void shouldEncodeAndMatchThroughThePool() {
+		encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), 2, 4);
+
+		String hash = encoder.encode("secret");
+
+		assertThat(encoder.matches("secret", hash)).isTrue();
+		assertThat(encoder.matches("wrong", hash)).isFalse();
+		assertThat(encoder.hashes()).isEqualTo(3);
+		assertThat(encoder.averageHashMillis()).isPositive();
+	}
+
+	@Test
+	void shouldRejectWhenTheQueueIsFull() throws Exception {
+		CountDownLatch hashing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		PasswordEncoder slow = new PasswordEncoder() {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				hashing.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return "hash";
+			}
+
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				return true;
+			}
+		};
+		encoder = new BoundedPasswordEncoder(slow, 1, 1);
+
+		CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> encoder.encode("a"));
+		hashing.await(5, TimeUnit.SECONDS);
+		CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> encoder.encode("b"));
+		while (encoder.queueDepth() == 0) {
+			Thread.onSpinWait();
+		}
+
+		assertThatThrownBy(() -> encoder.encode("c"))
+				.isInstanceOf(PasswordHashingRejectedException.class)
+				.extracting(e -> ((PasswordHashingRejectedException) e).getRetryAfterSeconds())
+				.isEqualTo(1L);
+		assertThat(encoder.rejected()).isEqualTo(1);
+
+		release.countDown();
+		assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("hash");
+		assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("hash");
+	}
+
+}
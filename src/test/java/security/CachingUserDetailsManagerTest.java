@@ -0,0 +1,67 @@
+package security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.provisioning.UserDetailsManager;
+
+class CachingUserDetailsManagerTest {
+
+	private UserDetailsManager delegate;
+	private CachingUserDetailsManager userDetailsManager;
+	private UserDetails user;
+
+	@BeforeEach
+	void setup() {
+		delegate = mock(UserDetailsManager.class);
+		userDetailsManager = new CachingUserDetailsManager(delegate, 100, Duration.ofMinutes(1));
+		user = User.withUsername("reader").password("encoded").roles("USER").build();
+		when(delegate.loadUserByUsername("reader")).thenReturn(user);
+	}
+
+	@Test
+	void shouldLoadEachUserFromTheDatabaseOnce() {
+		userDetailsManager.loadUserByUsername("reader");
+		UserDetails cached = userDetailsManager.loadUserByUsername("reader");
+
+		assertThat(cached.getUsername()).isEqualTo("reader");
+		assertThat(userDetailsManager.userExists("reader")).isTrue();
+		verify(delegate, times(1)).loadUserByUsername("reader");
+		verify(delegate, never()).userExists("reader");
+		assertThat(userDetailsManager.stats().hitCount()).isEqualTo(2);
+		assertThat(userDetailsManager.stats().missCount()).isEqualTo(1);
+	}
+
+	@Test
+	void erasingCredentialsOfAReturnedUserShouldNotTouchTheCache() {
+		User first = (User) userDetailsManager.loadUserByUsername("reader");
+		first.eraseCredentials();
+
+		assertThat(userDetailsManager.loadUserByUsername("reader").getPassword()).isEqualTo("encoded");
+	}
+
+	@Test
+	void writesShouldInvalidateTheCachedUser() {
+		userDetailsManager.loadUserByUsername("reader");
+
+		userDetailsManager.updateUser(user);
+		userDetailsManager.loadUserByUsername("reader");
+		userDetailsManager.deleteUser("reader");
+		userDetailsManager.loadUserByUsername("reader");
+
+		verify(delegate).updateUser(user);
+		verify(delegate).deleteUser("reader");
+		verify(delegate, times(3)).loadUserByUsername("reader");
+	}
+
+}
@@ -0,0 +1,108 @@
+package security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.provisioning.UserDetailsManager;
+
+import io.jsonwebtoken.JwtException;
+
+class JwtUtilTest {
+
+	private static final String SECRET = "test-secret-key-that-is-long-enough-for-hmac-sha256";
+
+	private UserDetails user;
+	private JwtUtil jwtUtil;
+	private EmbeddedDatabase database;
+	private TokenRevocationStore revocations;
+
+	@BeforeEach
+	void setup() {
+		user = User.withUsername("reader").password("{noop}password").roles("USER").build();
+		database = TokenRevocationStoreTest.newDatabase();
+		revocations = new TokenRevocationStore(new JdbcTemplate(database), 100, 0.01, 0, 0);
+		jwtUtil = new JwtUtil(SECRET, 60_000, 120_000, new InMemoryUserDetailsManager(user), 100, revocations);
+	}
+
+	@AfterEach
+	void stop() {
+		database.shutdown();
+	}
+
+	@Test
+	void shouldServeRepeatedChecksFromTheVerifiedCache() {
+		String token = jwtUtil.generateToken(user);
+
+		assertThat(jwtUtil.parseClaims(token)).isSameAs(jwtUtil.parseClaims(token));
+		assertThat(jwtUtil.getUsernameFromToken(token)).isEqualTo("reader");
+		assertThat(jwtUtil.validateAccessToken(token, user)).isTrue();
+	}
+
+	@Test
+	void shouldRejectTamperedTokens() {
+		String token = jwtUtil.generateToken(user);
+		String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+		//the genuine token is cached now, the tampered one must still go through signature verification
+		jwtUtil.validateAccessToken(token, user);
+		assertThatThrownBy(() -> jwtUtil.validateAccessToken(tampered, user)).isInstanceOf(BadCredentialsException.class);
+	}
+
+	@Test
+	void databaseErrorsShouldNotPassForBadCredentials() {
+		UserDetailsManager unavailable = mock(UserDetailsManager.class);
+		when(unavailable.userExists(any())).thenThrow(new DataAccessResourceFailureException("auth pool exhausted"));
+		JwtUtil util = new JwtUtil(SECRET, 60_000, 120_000, unavailable, 100, revocations);
+
+		assertThatThrownBy(() -> util.validateAccessToken(util.generateToken(user), user))
+				.isInstanceOf(DataAccessResourceFailureException.class);
+		assertThatThrownBy(() -> util.validateAccessToken("not-a-token", user)).isInstanceOf(BadCredentialsException.class);
+	}
+
+	@Test
+	void shouldNotCacheExpiredTokens() {
+		JwtUtil expiringUtil = new JwtUtil(SECRET, -1_000, -1_000, new InMemoryUserDetailsManager(user), 100, revocations);
+		String token = expiringUtil.generateToken(user);
+
+		assertThatThrownBy(() -> expiringUtil.getUsernameFromToken(token)).isInstanceOf(JwtException.class);
+		assertThat(expiringUtil.validateRefreshToken(expiringUtil.generateRefreshToken(user))).isFalse();
+	}
+
+	@Test
+	void refreshTokensShouldNotPassAsAccessTokens() {
+		String refreshToken = jwtUtil.generateRefreshToken(user);
+
+		assertThat(jwtUtil.validateRefreshToken(refreshToken)).isTrue();
+		assertThat(jwtUtil.validateAccessToken(refreshToken, user)).isFalse();
+	}
+
+	@Test
+	void revokedTokensShouldFailValidationWhileOthersStillPass() {
+		String refreshToken = jwtUtil.generateRefreshToken(user);
+		String otherRefreshToken = jwtUtil.generateRefreshToken(user);
+		String accessToken = jwtUtil.generateToken(user);
+		assertThat(jwtUtil.validateRefreshToken(refreshToken)).isTrue();
+		assertThat(jwtUtil.validateAccessToken(accessToken, user)).isTrue();
+
+		jwtUtil.revoke(refreshToken);
+		jwtUtil.revoke(accessToken);
+
+		assertThat(jwtUtil.validateRefreshToken(refreshToken)).isFalse();
+		assertThat(jwtUtil.validateAccessToken(accessToken, user)).isFalse();
+		assertThat(jwtUtil.validateRefreshToken(otherRefreshToken)).isTrue();
+	}
+
+}
@@ -0,0 +1,84 @@
+package security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	void bucketShouldAllowItsBurstThenRefillAtTheConfiguredRate() {
+		RateLimiter.Limit limit = new RateLimiter.Limit(3, 1);
+		RateLimiter.TokenBucket bucket = new RateLimiter.TokenBucket();
+		long now = 1_000 * SECOND;
+
+		assertThat(bucket.acquire(limit, now).getRemaining()).isEqualTo(2);
+		assertThat(bucket.acquire(limit, now).getRemaining()).isEqualTo(1);
+		RateLimiter.Decision last = bucket.acquire(limit, now);
+		assertThat(last.isAllowed()).isTrue();
+		assertThat(last.getRemaining()).isZero();
+		assertThat(last.getResetSeconds()).isEqualTo(3);
+
+		RateLimiter.Decision rejected = bucket.acquire(limit, now);
+		assertThat(rejected.isAllowed()).isFalse();
+		assertThat(rejected.getRetryAfterSeconds()).isEqualTo(1);
+
+		//one token back after a second, the full burst after three
+		assertThat(bucket.acquire(limit, now + SECOND).isAllowed()).isTrue();
+		assertThat(bucket.acquire(limit, now + SECOND).isAllowed()).isFalse();
+		assertThat(bucket.acquire(limit, now + 10 * SECOND).getRemaining()).isEqualTo(2);
+	}
+
+	@Test
+	void clientsAndGroupsShouldHaveTheirOwnBuckets() {
+		RateLimiter limiter = new RateLimiter(Map.of("auth", new RateLimiter.Limit(1, 0.001), "default", new RateLimiter.Limit(1, 0.001)), 100);
+
+		assertThat(limiter.acquire("auth", "ip:10.0.0.1").isAllowed()).isTrue();
+		assertThat(limiter.acquire("auth", "ip:10.0.0.1").isAllowed()).isFalse();
+		assertThat(limiter.acquire("auth", "ip:10.0.0.2").isAllowed()).isTrue();
+		assertThat(limiter.acquire("default", "ip:10.0.0.1").isAllowed()).isTrue();
+		assertThat(limiter.acquire("unlimited", "ip:10.0.0.1")).isNull();
+		assertThat(limiter.rejected("auth")).isEqualTo(1);
+	}
+
+	@Test
+	void concurrentRequestsShouldNeverGetMoreThanTheBurst() throws Exception {
+		RateLimiter limiter = new RateLimiter(Map.of("auth", new RateLimiter.Limit(100, 0.001)), 100);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			results.add(pool.submit(() -> {
+				start.await();
+				int allowed = 0;
+				for (int i = 0; i < 1000; i++) {
+					if (limiter.acquire("auth", "user:hot").isAllowed()) {
+						allowed++;
+					}
+				}
+				return allowed;
+			}));
+		}
+		start.countDown();
+		int allowed = 0;
+		for (Future<Integer> result : results) {
+			allowed += result.get();
+		}
+		pool.shutdown();
+
+		assertThat(allowed).isEqualTo(100);
+		assertThat(limiter.rejected("auth")).isEqualTo(7900);
+	}
+
+}
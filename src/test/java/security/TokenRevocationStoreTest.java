@@ -0,0 +1,140 @@
+package security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+class TokenRevocationStoreTest {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private TokenRevocationStore store;
+
+	//a database of its own with the app's schema, shared with JwtUtilTest
+	static EmbeddedDatabase newDatabase() {
+		return new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true)
+				.addScript("schema.sql")
+				.build();
+	}
+
+	@BeforeEach
+	void setup() {
+		database = newDatabase();
+		jdbcTemplate = new JdbcTemplate(database);
+		store = new TokenRevocationStore(jdbcTemplate, 1000, 0.01, 0, 0);
+		store.afterSingletonsInstantiated();
+	}
+
+	@AfterEach
+	void stop() {
+		database.shutdown();
+	}
+
+	private static Date inOneHour() {
+		return new Date(System.currentTimeMillis() + 3_600_000);
+	}
+
+	@Test
+	void notRevokedTokensShouldNeverReachTheDatabase() {
+		store.revoke("revoked-jti", inOneHour());
+
+		for (int i = 0; i < 1000; i++) {
+			store.isRevoked(UUID.randomUUID().toString());
+		}
+		assertThat(store.isRevoked("revoked-jti")).isTrue();
+		assertThat(store.exactHits()).isEqualTo(1);
+		//only Bloom false positives are looked up, around 1% of them
+		assertThat(store.databaseLookups()).isLessThan(50);
+		assertThat(store.filterNegatives() + store.databaseLookups()).isEqualTo(1000);
+	}
+
+	@Test
+	void revocationsShouldSurviveARestartAndRevocationsOfOtherInstancesShowUpAfterCompaction() {
+		store.revoke("revoked-jti", inOneHour());
+
+		TokenRevocationStore restarted = new TokenRevocationStore(jdbcTemplate, 1000, 0.01, 0, 0);
+		restarted.afterSingletonsInstantiated();
+		assertThat(restarted.isRevoked("revoked-jti")).isTrue();
+
+		//another instance wrote this one
+		jdbcTemplate.update("insert into revoked_tokens (jti, expires_at) values (?, ?)", "elsewhere-jti", new Timestamp(inOneHour().getTime()));
+		restarted.compact();
+		assertThat(restarted.isRevoked("elsewhere-jti")).isTrue();
+		assertThat(restarted.databaseLookups()).isEqualTo(2);
+	}
+
+	@Test
+	void revocationsOfOtherInstancesShouldShowUpOnTheNextPoll() {
+		TokenRevocationStore other = new TokenRevocationStore(jdbcTemplate, 1000, 0.01, 0, 0);
+		other.afterSingletonsInstantiated();
+		assertThat(other.isRevoked("jti-1")).isFalse();
+
+		store.revoke("jti-1", inOneHour());
+		assertThat(other.poll()).isEqualTo(1);
+
+		//no compaction in between, and answered from the exact set rather than the database
+		long lookups = other.databaseLookups();
+		assertThat(other.isRevoked("jti-1")).isTrue();
+		assertThat(other.exactHits()).isEqualTo(1);
+		assertThat(other.databaseLookups()).isEqualTo(lookups);
+	}
+
+	@Test
+	void revocationsConfirmedByTheDatabaseShouldHoldUntilTheTokenExpires() throws InterruptedException {
+		TokenRevocationStore other = new TokenRevocationStore(jdbcTemplate, 1000, 0.01, 0, 0);
+		other.afterSingletonsInstantiated();
+		store.revoke("jti-1", inOneHour());
+		other.compact();
+
+		assertThat(other.isRevoked("jti-1")).isTrue();
+		//past the one second a confirmed revocation used to be remembered for
+		Thread.sleep(1_200);
+		assertThat(other.isRevoked("jti-1")).isTrue();
+		assertThat(other.exactHits()).isEqualTo(1);
+	}
+
+	@Test
+	void compactionShouldDropExpiredRevocations() {
+		store.revoke("live-jti", inOneHour());
+		store.revoke("live-jti", inOneHour());
+		jdbcTemplate.update("insert into revoked_tokens (jti, expires_at) values (?, ?)", "expired-jti", new Timestamp(System.currentTimeMillis() - 1000));
+		//already expired tokens are not worth a row
+		store.revoke("past-jti", new Date(System.currentTimeMillis() - 1000));
+
+		store.compact();
+
+		assertThat(jdbcTemplate.queryForList("select jti from revoked_tokens", String.class)).containsExactly("live-jti");
+		assertThat(store.isRevoked("live-jti")).isTrue();
+		assertThat(store.isRevoked("expired-jti")).isFalse();
+		assertThat(store.isRevoked(null)).isFalse();
+	}
+
+	@Test
+	void bloomFilterShouldStayNearItsFalsePositiveRate() {
+		BloomFilter filter = new BloomFilter(10_000, 0.01);
+		for (int i = 0; i < 10_000; i++) {
+			filter.put("member-" + i);
+		}
+		int falsePositives = 0;
+		for (int i = 0; i < 100_000; i++) {
+			assertThat(filter.mightContain("member-" + (i % 10_000))).isTrue();
+			if (filter.mightContain("other-" + i)) {
+				falsePositives++;
+			}
+		}
+		assertThat(falsePositives).isLessThan(2_000);
+	}
+
+}
@@ -0,0 +1,114 @@
+package service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.BookChangeEvent;
+import models.Books;
+import repository.BookRepository;
+
+class BookCacheTest {
+
+	private BookRepository bookRepository;
+	private BookCache bookCache;
+	private Books book;
+
+	@BeforeEach
+	void setup() {
+		bookRepository = mock(BookRepository.class);
+		bookCache = new BookCache(bookRepository, 100, 60, 10);
+		book = new Books();
+		book.setIsbn("123");
+		book.setTitle("Cached");
+		book.setAuthor("Someone");
+		book.setVersion(0L);
+	}
+
+	@Test
+	void concurrentMissesShouldShareOneLoad() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		when(bookRepository.findById("123")).thenAnswer(invocation -> {
+			loading.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return Optional.of(book);
+		});
+
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Optional<Books>>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(pool.submit(() -> bookCache.find("123")));
+			}
+			loading.await(5, TimeUnit.SECONDS);
+			release.countDown();
+			for (Future<Optional<Books>> result : results) {
+				assertThat(result.get(5, TimeUnit.SECONDS)).get().extracting(Books::getTitle).isEqualTo("Cached");
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		verify(bookRepository, times(1)).findById("123");
+	}
+
+	@Test
+	void unknownIsbnsShouldBeCachedAsMisses() {
+		when(bookRepository.findById("missing")).thenReturn(Optional.empty());
+
+		assertThat(bookCache.find("missing")).isEmpty();
+		assertThat(bookCache.find("missing")).isEmpty();
+
+		verify(bookRepository, times(1)).findById("missing");
+		assertThat(bookCache.stats().hitCount()).isEqualTo(1);
+	}
+
+	@Test
+	void changeEventsShouldInvalidateTheIsbn() {
+		when(bookRepository.findById("123")).thenReturn(Optional.of(book));
+
+		bookCache.find("123");
+		bookCache.onBookChange(BookChangeEvent.deleted("123"));
+		bookCache.find("123");
+
+		verify(bookRepository, times(2)).findById("123");
+	}
+
+	@Test
+	void failedLoadsShouldNotBeCached() {
+		when(bookRepository.findById("123"))
+				.thenThrow(new IllegalStateException("database down"))
+				.thenReturn(Optional.of(book));
+
+		assertThatThrownBy(() -> bookCache.find("123")).isInstanceOf(IllegalStateException.class);
+		assertThat(bookCache.find("123")).get().extracting(Books::getTitle).isEqualTo("Cached");
+	}
+
+	@Test
+	void cachedBooksShouldNotBeTheLoadedInstance() {
+		when(bookRepository.findById("123")).thenReturn(Optional.of(book));
+
+		Books cached = bookCache.find("123").orElseThrow();
+		book.setTitle("Changed in some persistence context");
+
+		assertThat(cached).isNotSameAs(book);
+		assertThat(bookCache.find("123").orElseThrow().getTitle()).isEqualTo("Cached");
+	}
+
+}
@@ -0,0 +1,60 @@
+package service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.validation.Validation;
+import models.BookChangeEvent;
+import models.BookImportErrorDTO;
+import models.BookImportReportDTO;
+
+class BookImportServiceTest {
+
+	private final repository.BookRepository bookrepo = mock(repository.BookRepository.class);
+	private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+	private final BookImportService importService = new BookImportService(bookrepo, eventPublisher, new ObjectMapper(),
+			Validation.buildDefaultValidatorFactory().getValidator(), mock(PlatformTransactionManager.class), 2, 2);
+
+	@Test
+	void aChunkThatCannotGetAConnectionShouldBeReportedAndTheImportGoOn() throws Exception {
+		//the second chunk finds the pool exhausted
+		AtomicInteger chunks = new AtomicInteger();
+		doAnswer(invocation -> {
+			if (chunks.incrementAndGet() == 2) {
+				throw new CannotCreateTransactionException("pool exhausted");
+			}
+			return null;
+		}).when(bookrepo).upsertAll(any(), anyInt());
+		doThrow(new IllegalStateException("listener broke")).when(eventPublisher).publishEvent(any(BookChangeEvent.class));
+
+		StringBuilder body = new StringBuilder("isbn,author,title,price\n");
+		for (int i = 1; i <= 5; i++) {
+			body.append("i-").append(i).append(",Author,Title,10.0\n");
+		}
+		BookImportReportDTO report = importService.importCsv(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+
+		assertThat(report.getReceived()).isEqualTo(5);
+		assertThat(report.getImported()).isEqualTo(3);
+		assertThat(report.getFailed()).isEqualTo(2);
+		List<BookImportErrorDTO> errors = report.getErrors();
+		assertThat(errors).extracting(BookImportErrorDTO::getIsbn).containsExactly("i-3", "i-4");
+		assertThat(errors.getFirst().getErrors().get("record")).isEqualTo("Chunk rolled back: pool exhausted");
+	}
+
+}
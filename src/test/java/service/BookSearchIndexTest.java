@@ -0,0 +1,115 @@
+package service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import models.BookChangeEvent;
+import models.BookUpdateDTO;
+import models.Books;
+import repository.BookRepository;
+
+class BookSearchIndexTest {
+
+	private BookRepository bookRepository;
+	private BookSearchIndex index;
+
+	@BeforeEach
+	void setup() {
+		bookRepository = mock(BookRepository.class);
+		index = new BookSearchIndex(bookRepository, 3, 1000);
+		index.onBookChange(BookChangeEvent.saved(book("1", "J.R.R. Tolkien", "The Lord of the Rings", 0L)));
+		index.onBookChange(BookChangeEvent.saved(book("2", "J.R.R. Tolkien", "The Hobbit", 0L)));
+		index.onBookChange(BookChangeEvent.saved(book("3", "Gabriel García Márquez", "One Hundred Years of Solitude", 0L)));
+		index.onBookChange(BookChangeEvent.saved(book("4", "Lord Dunsany", "The King of Elfland's Daughter", 0L)));
+	}
+
+	private static Books book(String isbn, String author, String title, Long version) {
+		Books book = new Books();
+		book.setIsbn(isbn);
+		book.setAuthor(author);
+		book.setTitle(title);
+		book.setPrice(10.0);
+		book.setVersion(version);
+		return book;
+	}
+
+	@Test
+	void shouldMatchPrefixesOfEveryTerm() {
+		assertThat(index.search("tolk", 10)).extracting(Books::getIsbn).containsExactlyInAnyOrder("1", "2");
+		assertThat(index.search("tolk hob", 10)).extracting(Books::getIsbn).containsExactly("2");
+		assertThat(index.search("tolkien dune", 10)).isEmpty();
+	}
+
+	@Test
+	void shouldIgnoreCaseAndAccents() {
+		assertThat(index.search("GARCIA marq", 10)).extracting(Books::getIsbn).containsExactly("3");
+	}
+
+	@Test
+	void shouldRankTitleAndExactMatchesFirst() {
+		//"lord" is in the title of 1 and the author of 4
+		assertThat(index.search("lord", 10)).extracting(Books::getIsbn).containsExactly("1", "4");
+		assertThat(index.search("the", 2)).hasSize(2);
+	}
+
+	@Test
+	void shouldFollowUpdatesAndDeletes() {
+		when(bookRepository.findById("2")).thenReturn(Optional.of(book("2", "J.R.R. Tolkien", "The Silmarillion", 1L)));
+		index.onBookChange(BookChangeEvent.updated("2", new BookUpdateDTO()));
+
+		assertThat(index.search("hobbit", 10)).isEmpty();
+		assertThat(index.search("silm", 10)).extracting(Books::getTitle).containsExactly("The Silmarillion");
+
+		index.onBookChange(BookChangeEvent.deleted("2"));
+		assertThat(index.search("silm", 10)).isEmpty();
+		assertThat(index.size()).isEqualTo(3);
+	}
+
+	@Test
+	void shouldKeepTheNewerVersionWhenEventsArriveOutOfOrder() {
+		index.onBookChange(BookChangeEvent.saved(book("5", "Author", "Newer Title", 3L)));
+		index.onBookChange(BookChangeEvent.saved(book("5", "Author", "Older Title", 2L)));
+
+		assertThat(index.search("newer", 10)).extracting(Books::getIsbn).containsExactly("5");
+		assertThat(index.search("older", 10)).isEmpty();
+	}
+
+	@Test
+	void shortTermsShouldOnlyMatchWholeWords() {
+		assertThat(index.search("lo", 10)).isEmpty();
+		assertThat(index.search("of", 10)).extracting(Books::getIsbn).containsExactlyInAnyOrder("1", "3", "4");
+		assertThat(index.search("j r tolk", 10)).extracting(Books::getIsbn).containsExactlyInAnyOrder("1", "2");
+	}
+
+	@Test
+	void broadQueriesShouldOnlyRankTheFirstCandidates() {
+		BookSearchIndex capped = new BookSearchIndex(bookRepository, 3, 2);
+		capped.onBookChange(BookChangeEvent.saved(book("5", "Author", "Lords of A", 0L)));
+		capped.onBookChange(BookChangeEvent.saved(book("6", "Author", "Lordship of B", 0L)));
+		capped.onBookChange(BookChangeEvent.saved(book("7", "Author", "Lord of C", 0L)));
+
+		//the exact match is always among them
+		assertThat(capped.search("lord", 10)).hasSize(2).extracting(Books::getIsbn).startsWith("7");
+		assertThat(capped.search("author", 10)).hasSize(2);
+	}
+
+	@Test
+	void aSaveThatRacedADeleteShouldNotBringTheBookBack() {
+		when(bookRepository.findCurrent("2")).thenReturn(Optional.empty());
+		index.onBookChange(BookChangeEvent.deleted("2"));
+		index.onBookChange(BookChangeEvent.saved(book("2", "J.R.R. Tolkien", "The Hobbit", 3L)));
+		assertThat(index.search("hobbit", 10)).isEmpty();
+
+		//a new book under the same isbn starts over at version 0 and is still indexed
+		when(bookRepository.findCurrent("2")).thenReturn(Optional.of(book("2", "Someone Else", "The Hobbit Again", 0L)));
+		index.onBookChange(BookChangeEvent.saved(book("2", "Someone Else", "The Hobbit Again", 0L)));
+		assertThat(index.search("hobbit", 10)).extracting(Books::getTitle).containsExactly("The Hobbit Again");
+	}
+
+}
@@ -0,0 +1,221 @@
+package service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import models.BookChangeEvent;
+import models.Books;
+import repository.BookRepository;
+
+class BookWriteBehindTest {
+
+	private final BookRepository bookrepo = mock(BookRepository.class);
+	private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+	//every batch that reached upsertAll, copied because the writer reuses its list
+	private final List<List<String>> commits = new CopyOnWriteArrayList<>();
+	private BookWriteBehind writeBehind;
+
+	private BookWriteBehind start(int queueCapacity, int batchSize, long maxDelayMillis) {
+		doAnswer(invocation -> {
+			List<Books> batch = invocation.getArgument(0);
+			List<String> isbns = new ArrayList<>();
+			batch.forEach(book -> isbns.add(book.getIsbn()));
+			commits.add(isbns);
+			return null;
+		}).when(bookrepo).upsertAll(any(), anyInt());
+		writeBehind = new BookWriteBehind(bookrepo, eventPublisher, mock(PlatformTransactionManager.class),
+				true, queueCapacity, batchSize, maxDelayMillis, 5);
+		writeBehind.start();
+		return writeBehind;
+	}
+
+	@AfterEach
+	void stop() {
+		if (writeBehind != null) {
+			writeBehind.stop();
+		}
+	}
+
+	private static Books book(String isbn) {
+		Books book = new Books();
+		book.setIsbn(isbn);
+		book.setTitle("Title " + isbn);
+		book.setAuthor("Author");
+		book.setPrice(10.0);
+		return book;
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).as("condition not met within 5 s").isLessThan(deadline);
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	void booksArrivingWithinTheWindowShouldBeCommittedTogether() throws Exception {
+		start(100, 50, 500);
+		for (int i = 0; i < 10; i++) {
+			assertThat(writeBehind.offer(book("wb-" + i))).isTrue();
+		}
+		assertThat(writeBehind.status("wb-3")).isEqualTo(BookWriteBehind.Status.PENDING);
+
+		await(() -> writeBehind.written() == 10);
+		assertThat(commits).hasSize(1);
+		assertThat(commits.get(0)).hasSize(10);
+		assertThat(writeBehind.batches()).isEqualTo(1);
+		assertThat(writeBehind.status("wb-3")).isNull();
+		verify(eventPublisher, times(10)).publishEvent(any(BookChangeEvent.class));
+	}
+
+	@Test
+	void aFullBatchShouldNotWaitForTheWindow() throws Exception {
+		start(100, 4, 60_000);
+		for (int i = 0; i < 8; i++) {
+			writeBehind.offer(book("full-" + i));
+		}
+
+		await(() -> writeBehind.written() == 8);
+		assertThat(commits).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(4));
+	}
+
+	@Test
+	void aFullQueueShouldRejectRightAway() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		start(2, 10, 0);
+		doAnswer(invocation -> {
+			release.await();
+			return null;
+		}).when(bookrepo).upsertAll(any(), anyInt());
+
+		writeBehind.offer(book("busy"));
+		//the writer took it and is stuck in the commit, the queue is empty again
+		await(() -> writeBehind.queueDepth() == 0);
+		assertThat(writeBehind.offer(book("q1"))).isTrue();
+		assertThat(writeBehind.offer(book("q2"))).isTrue();
+		assertThat(writeBehind.offer(book("overflow"))).isFalse();
+
+		assertThat(writeBehind.rejected()).isEqualTo(1);
+		assertThat(writeBehind.retryAfterSeconds()).isGreaterThanOrEqualTo(1);
+		assertThat(writeBehind.status("busy")).isEqualTo(BookWriteBehind.Status.PENDING);
+		assertThat(writeBehind.status("overflow")).isNull();
+
+		release.countDown();
+		await(() -> writeBehind.written() == 3);
+		assertThat(writeBehind.status("q2")).isNull();
+	}
+
+	@Test
+	void stopShouldDrainTheQueueAndRefuseNewBooks() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		start(10, 10, 0);
+		doAnswer(invocation -> {
+			release.await();
+			List<Books> batch = invocation.getArgument(0);
+			batch.forEach(book -> commits.add(List.of(book.getIsbn())));
+			return null;
+		}).when(bookrepo).upsertAll(any(), anyInt());
+
+		writeBehind.offer(book("first"));
+		await(() -> writeBehind.queueDepth() == 0);
+		writeBehind.offer(book("second"));
+		writeBehind.offer(book("third"));
+
+		CompletableFuture<Void> stopping = CompletableFuture.runAsync(writeBehind::stop);
+		await(() -> !writeBehind.isRunning());
+		assertThat(writeBehind.offer(book("late"))).isFalse();
+		release.countDown();
+		stopping.get(5, TimeUnit.SECONDS);
+
+		assertThat(writeBehind.written()).isEqualTo(3);
+		assertThat(writeBehind.queueDepth()).isZero();
+		assertThat(writeBehind.isRunning()).isFalse();
+	}
+
+	@Test
+	void aBatchThatKeepsFailingShouldBeReportedPerIsbn() throws Exception {
+		start(10, 10, 0);
+		doThrow(new DataAccessResourceFailureException("primary down")).when(bookrepo).upsertAll(any(), anyInt());
+
+		writeBehind.offer(book("doomed"));
+
+		await(() -> writeBehind.status("doomed") == BookWriteBehind.Status.FAILED);
+		assertThat(writeBehind.failure("doomed")).isEqualTo("primary down");
+		assertThat(writeBehind.failures()).isEqualTo(1);
+		verify(bookrepo, times(3)).upsertAll(any(), anyInt());
+
+		//posting it again clears the failure
+		writeBehind.offer(book("doomed"));
+		assertThat(writeBehind.status("doomed")).isEqualTo(BookWriteBehind.Status.PENDING);
+	}
+
+	@Test
+	void otherExceptionsShouldNotKillTheWriter() throws Exception {
+		start(10, 10, 0);
+		doThrow(new CannotCreateTransactionException("pool exhausted")).when(bookrepo).upsertAll(any(), anyInt());
+
+		writeBehind.offer(book("no-connection"));
+		await(() -> writeBehind.status("no-connection") == BookWriteBehind.Status.FAILED);
+		assertThat(writeBehind.failure("no-connection")).isEqualTo("pool exhausted");
+
+		//the same thread keeps writing once the database is back, even when a listener throws
+		doAnswer(invocation -> null).when(bookrepo).upsertAll(any(), anyInt());
+		doThrow(new IllegalStateException("listener broke")).when(eventPublisher).publishEvent(any(BookChangeEvent.class));
+		writeBehind.offer(book("recovered"));
+		await(() -> writeBehind.written() == 1);
+		await(() -> writeBehind.status("recovered") == null);
+
+		writeBehind.offer(book("after-listener"));
+		await(() -> writeBehind.written() == 2);
+	}
+
+	@Test
+	void oneBadBookShouldNotFailTheRestOfItsBatch() throws Exception {
+		start(100, 50, 500);
+		doAnswer(invocation -> {
+			List<Books> batch = invocation.getArgument(0);
+			if (batch.stream().anyMatch(book -> book.getIsbn().equals("bad"))) {
+				throw new DataIntegrityViolationException("value too long");
+			}
+			List<String> isbns = new ArrayList<>();
+			batch.forEach(book -> isbns.add(book.getIsbn()));
+			commits.add(isbns);
+			return null;
+		}).when(bookrepo).upsertAll(any(), anyInt());
+
+		for (int i = 0; i < 5; i++) {
+			writeBehind.offer(book(i == 2 ? "bad" : "row-" + i));
+		}
+
+		await(() -> writeBehind.written() == 4);
+		assertThat(writeBehind.status("bad")).isEqualTo(BookWriteBehind.Status.FAILED);
+		assertThat(writeBehind.failure("bad")).isEqualTo("value too long");
+		assertThat(writeBehind.failures()).isEqualTo(1);
+		assertThat(commits).containsExactly(List.of("row-0"), List.of("row-1"), List.of("row-3"), List.of("row-4"));
+		assertThat(writeBehind.status("row-4")).isNull();
+	}
+
+}
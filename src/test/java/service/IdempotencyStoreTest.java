@@ -0,0 +1,173 @@
+package service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+class IdempotencyStoreTest {
+
+	private final IdempotencyStore store = new IdempotencyStore(100, 60, 5);
+
+	@Test
+	void concurrentDuplicatesShouldWaitForTheFirstRequestAndShareItsResponse() throws Exception {
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<ResponseEntity<?>> first = executor.submit(() -> store.execute("user\nk1", List.of("a"), () -> {
+				runs.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return ResponseEntity.status(HttpStatus.ACCEPTED).body("created");
+			}));
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+			
+			List<Future<ResponseEntity<?>>> duplicates = List.of(
+					executor.submit(() -> store.execute("user\nk1", List.of("a"), () -> {
+						runs.incrementAndGet();
+						return ResponseEntity.ok("ran twice");
+					})),
+					executor.submit(() -> store.execute("user\nk1", List.of("a"), () -> {
+						runs.incrementAndGet();
+						return ResponseEntity.ok("ran twice");
+					})));
+			release.countDown();
+
+			assertThat(first.get(5, TimeUnit.SECONDS).getHeaders().containsKey(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+			for (Future<ResponseEntity<?>> duplicate : duplicates) {
+				ResponseEntity<?> response = duplicate.get(5, TimeUnit.SECONDS);
+				assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+				assertThat(response.getBody()).isEqualTo("created");
+				assertThat(response.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER)).isEqualTo("true");
+			}
+			assertThat(runs).hasValue(1);
+			assertThat(store.replays()).isEqualTo(2);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void aFailedAttemptShouldNotBeStored() {
+		assertThatThrownBy(() -> store.execute("user\nk2", List.of("a"), () -> {
+			throw new IllegalStateException("database down");
+		})).isInstanceOf(IllegalStateException.class);
+
+		ResponseEntity<?> retry = store.execute("user\nk2", List.of("a"), () -> ResponseEntity.ok("second try"));
+		assertThat(retry.getBody()).isEqualTo("second try");
+		assertThat(retry.getHeaders().containsKey(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+	}
+
+	@Test
+	void aServerErrorShouldNotBeStored() {
+		ResponseEntity<?> busy = store.execute("user\nk5", List.of("a"), () -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("queue full"));
+		assertThat(busy.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+		ResponseEntity<?> retry = store.execute("user\nk5", List.of("a"), () -> ResponseEntity.status(HttpStatus.ACCEPTED).body("queued"));
+		assertThat(retry.getBody()).isEqualTo("queued");
+		assertThat(retry.getHeaders().containsKey(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+	}
+
+	@Test
+	void aDuplicateWaitingOnAServerErrorShouldRunTheRequestItself() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<ResponseEntity<?>> first = executor.submit(() -> store.execute("user\nk6", List.of("a"), () -> {
+				started.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("queue full");
+			}));
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+			Future<ResponseEntity<?>> duplicate = executor.submit(
+					() -> store.execute("user\nk6", List.of("a"), () -> ResponseEntity.status(HttpStatus.ACCEPTED).body("queued")));
+			//give the duplicate time to start waiting on the first request
+			Thread.sleep(200);
+			release.countDown();
+
+			assertThat(first.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+			ResponseEntity<?> response = duplicate.get(5, TimeUnit.SECONDS);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+			assertThat(response.getHeaders().containsKey(IdempotencyStore.REPLAYED_HEADER)).isFalse();
+			assertThat(store.replays()).isZero();
+		}
+		finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void anErrorShouldNotLeaveTheKeyInFlight() {
+		assertThatThrownBy(() -> store.execute("user\nk7", List.of("a"), () -> {
+			throw new StackOverflowError();
+		})).isInstanceOf(StackOverflowError.class);
+
+		ResponseEntity<?> retry = store.execute("user\nk7", List.of("a"), () -> ResponseEntity.ok("second try"));
+		assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(retry.getBody()).isEqualTo("second try");
+	}
+
+	@Test
+	void theSameKeyWithAnotherBodyShouldBeRejected() {
+		store.execute("user\nk3", List.of("a"), () -> ResponseEntity.ok("first"));
+
+		ResponseEntity<?> reused = store.execute("user\nk3", List.of("b"), () -> ResponseEntity.ok("should not run"));
+		assertThat(reused.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+		assertThat(store.mismatches()).isEqualTo(1);
+	}
+
+	@Test
+	void aDuplicateShouldGiveUpWithA409WhenTheFirstRequestTakesTooLong() throws Exception {
+		IdempotencyStore impatient = new IdempotencyStore(100, 60, 0);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(() -> impatient.execute("user\nk4", List.of("a"), () -> {
+				started.countDown();
+				try {
+					release.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return ResponseEntity.ok("slow");
+			}));
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+			ResponseEntity<?> duplicate = impatient.execute("user\nk4", List.of("a"), () -> ResponseEntity.ok("should not run"));
+			assertThat(duplicate.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+			assertThat(duplicate.getHeaders().getFirst("Retry-After")).isEqualTo("1");
+		}
+		finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+}
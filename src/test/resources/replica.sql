@@ -0,0 +1,18 @@
+-- The tables the application reads, for an H2 database that stands in for a read replica in tests
+runscript from 'classpath:schema.sql';
+create table if not exists books (
+	isbn varchar(255) not null primary key,
+	author varchar(255),
+	title varchar(255),
+	price float(53) not null,
+	version bigint,
+	updated_at bigint default 0 not null
+);
+create table if not exists book_catalog (
+	id int not null primary key,
+	version bigint default 0 not null
+);
+create table if not exists book_tombstones (
+	isbn varchar(255) not null primary key,
+	deleted_at bigint not null
+);